@@ -0,0 +1,59 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+/**
+ * Combines the values of a column of all rows of a group into a single
+ * value, see {@link GroupBy}. Some common aggregators are provided by
+ * {@link Aggregators}.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public interface Aggregator {
+
+    /**
+     * Create the accumulator for a new group
+     * 
+     * @return See above
+     */
+    Accumulator newAccumulator();
+
+    /**
+     * Collects the values of one group
+     */
+    interface Accumulator {
+
+        /**
+         * Add the value of the next row of the group
+         * 
+         * @param value
+         *            The value
+         */
+        void add(String value);
+
+        /**
+         * @return The aggregated value
+         */
+        String getResult();
+    }
+}
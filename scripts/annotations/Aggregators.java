@@ -0,0 +1,214 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import annotations.Aggregator.Accumulator;
+
+/**
+ * Common {@link Aggregator}s
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class Aggregators {
+
+    /**
+     * Compares numbers numerically, everything else lexicographically
+     * (numbers first)
+     */
+    public static final Comparator<String> NUMBERS_FIRST = new Comparator<String>() {
+        @Override
+        public int compare(String s1, String s2) {
+            Double d1 = toNumber(s1);
+            Double d2 = toNumber(s2);
+            if (d1 != null && d2 != null)
+                return d1.compareTo(d2);
+            if (d1 != null)
+                return -1;
+            if (d2 != null)
+                return 1;
+            return s1.compareTo(s2);
+        }
+    };
+
+    private Aggregators() {
+    }
+
+    /**
+     * Concatenates the distinct, non-empty values in the order they occur.
+     * Values which already are lists (i.e. contain the separator) are merged
+     * element by element, so "A;B" and "B" result in "A;B".
+     * 
+     * @param separator
+     *            The separator to put between the values
+     * @return See above
+     */
+    public static Aggregator distinctConcat(final String separator) {
+        return () -> new Accumulator() {
+            final Set<String> seen = new HashSet<String>();
+            final StringBuilder sb = new StringBuilder();
+
+            @Override
+            public void add(String value) {
+                if (value == null || value.isEmpty())
+                    return;
+                // a value which is new as a whole is kept as it is, otherwise
+                // only its new parts are appended
+                int mark = sb.length();
+                int added = 0;
+                int parts = 0;
+                int start = 0;
+                int end;
+                do {
+                    end = value.indexOf(separator, start);
+                    String part = (end < 0 ? value.substring(start) : value
+                            .substring(start, end)).trim();
+                    start = end + separator.length();
+                    if (part.isEmpty())
+                        continue;
+                    parts++;
+                    if (seen.add(part)) {
+                        if (sb.length() > 0)
+                            sb.append(separator);
+                        sb.append(part);
+                        added++;
+                    }
+                } while (end >= 0);
+                if (added > 0 && added == parts) {
+                    sb.setLength(mark);
+                    if (mark > 0)
+                        sb.append(separator);
+                    sb.append(value.trim());
+                }
+            }
+
+            @Override
+            public String getResult() {
+                return sb.toString();
+            }
+        };
+    }
+
+    /**
+     * Keeps the value of the first row
+     * 
+     * @return See above
+     */
+    public static Aggregator first() {
+        return () -> new Accumulator() {
+            String first = null;
+
+            @Override
+            public void add(String value) {
+                if (first == null)
+                    first = value;
+            }
+
+            @Override
+            public String getResult() {
+                return first;
+            }
+        };
+    }
+
+    /**
+     * Counts the rows
+     * 
+     * @return See above
+     */
+    public static Aggregator count() {
+        return () -> new Accumulator() {
+            int count = 0;
+
+            @Override
+            public void add(String value) {
+                count++;
+            }
+
+            @Override
+            public String getResult() {
+                return String.valueOf(count);
+            }
+        };
+    }
+
+    /**
+     * Keeps the smallest non-empty value, see {@link #NUMBERS_FIRST}
+     * 
+     * @return See above
+     */
+    public static Aggregator min() {
+        return min(NUMBERS_FIRST);
+    }
+
+    /**
+     * Keeps the largest non-empty value, see {@link #NUMBERS_FIRST}
+     * 
+     * @return See above
+     */
+    public static Aggregator max() {
+        return min(NUMBERS_FIRST.reversed());
+    }
+
+    /**
+     * Keeps the smallest non-empty value
+     * 
+     * @param comparator
+     *            The comparator defining the order of the values
+     * @return See above
+     */
+    public static Aggregator min(final Comparator<String> comparator) {
+        return () -> new Accumulator() {
+            String min = null;
+
+            @Override
+            public void add(String value) {
+                if (value == null || value.isEmpty())
+                    return;
+                if (min == null || comparator.compare(value, min) < 0)
+                    min = value;
+            }
+
+            @Override
+            public String getResult() {
+                return min != null ? min : "";
+            }
+        };
+    }
+
+    private static Double toNumber(String s) {
+        if (s.isEmpty())
+            return null;
+        char c = s.charAt(0);
+        if (!(c >= '0' && c <= '9') && c != '-' && c != '+' && c != '.')
+            return null;
+        try {
+            return Double.valueOf(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -21,25 +21,18 @@
 
 package annotations;
 
-import annotations.org.apache.commons.text.StringTokenizer;
-
 /**
  * Some basic split and join methods for handling CSV lines.
  * Needs the https://commons.apache.org/proper/commons-text/ library.
  * 
+ * The methods are thread-safe, each thread uses its own {@link CSVParser}
+ * (see {@link CSVFormat}).
+ * 
  * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
  *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
  */
 public class BasicCSVUtils {
 
-    static StringTokenizer t = new StringTokenizer();
-    static {
-        t.setDelimiterChar(',');
-        t.setQuoteChar('"');
-        t.setIgnoreEmptyTokens(false);
-        t.setEmptyTokenAsNull(true);
-    }
-    
     /**
      * Split and trim a CSV String
      * @param input The input String
@@ -56,23 +49,7 @@ public class BasicCSVUtils {
      * @return See above
      */
     public static String[] split(String input, char sep) {
-        if (input.charAt(input.length() - 1) == sep) {
-            // have to ensure that the line doesn't end
-            // with separator char, otherwise the trim()
-            // would cut off the last 'cell'
-            input += " ";
-        }
-        t.setDelimiterChar(sep);
-        t.reset(input);
-        String[] res = t.getTokenArray();
-        for (int i = 0; i < res.length; i++) {
-            if (res[i] == null)
-                res[i] = "";
-            else
-                res[i] = res[i].trim();
-        }
-
-        return res;
+        return CSVFormat.of(sep).parser().split(input);
     }
 
     /**
@@ -91,18 +68,7 @@ public class BasicCSVUtils {
      * @return See above
      */
     public static String join(String[] input, char sep) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < input.length; i++) {
-            if (input[i] == null)
-                sb.append("");
-            else if(input[i].indexOf(sep)>0)
-                sb.append("\""+input[i]+"\"");
-            else
-                sb.append(input[i]);
-            if (i < input.length - 1)
-                sb.append(sep);
-        }
-        return sb.toString();
+        return CSVFormat.of(sep).join(input);
     }
     
 }
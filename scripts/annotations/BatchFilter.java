@@ -0,0 +1,45 @@
+package annotations;
+
+/**
+ * Filter many rows of a CSV string at once, by the values of one column.
+ * Use {@link #of(Filter)} to turn a {@link Filter} into a batch filter.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public interface BatchFilter {
+
+    /**
+     * Removes the rows which should be filtered out from the selection. For
+     * each i &lt; n the value input[sel[i]] is checked; the indices of the
+     * rows which are kept are moved to the front of sel (keeping their
+     * order).
+     * 
+     * @param input
+     *            The input strings to check
+     * @param sel
+     *            The indices of the values to check (in ascending order)
+     * @param n
+     *            The number of values to check
+     * @return The number of rows which are kept
+     */
+    int filter(String[] input, int[] sel, int n);
+
+    /**
+     * Creates a batch filter which applies a filter to each value
+     * 
+     * @param filter
+     *            The filter
+     * @return See above
+     */
+    static BatchFilter of(final Filter filter) {
+        return (input, sel, n) -> {
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                if (!filter.filter(input[sel[i]]))
+                    sel[kept++] = sel[i];
+            }
+            return kept;
+        };
+    }
+}
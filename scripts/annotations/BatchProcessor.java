@@ -0,0 +1,48 @@
+package annotations;
+
+/**
+ * Process the content of many CSV cells at once, e.g. a whole column of a
+ * {@link Table}. Use {@link #of(Processor)} to turn a {@link Processor} into
+ * a batch processor.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public interface BatchProcessor {
+
+    /**
+     * Process the selected values. For each i &lt; n the value
+     * input[sel[i]] is processed and the result written to output[sel[i]];
+     * other elements of output must not be changed.
+     * 
+     * @param input
+     *            The input strings
+     * @param sel
+     *            The indices of the values to process (in ascending order),
+     *            or <code>null</code> to process input[0] to input[n-1]
+     * @param n
+     *            The number of values to process
+     * @param output
+     *            The array for the results (may be the input array itself)
+     */
+    void process(String[] input, int[] sel, int n, String[] output);
+
+    /**
+     * Creates a batch processor which applies a processor to each value
+     * 
+     * @param processor
+     *            The processor
+     * @return See above
+     */
+    static BatchProcessor of(final Processor processor) {
+        return (input, sel, n, output) -> {
+            if (sel == null) {
+                for (int i = 0; i < n; i++)
+                    output[i] = processor.process(input[i]);
+            } else {
+                for (int i = 0; i < n; i++)
+                    output[sel[i]] = processor.process(input[sel[i]]);
+            }
+        };
+    }
+}
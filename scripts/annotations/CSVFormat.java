@@ -0,0 +1,204 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable CSV format description (separator, quote character, trimming,
+ * handling of empty cells). A format can be shared between threads, the
+ * actual parsing is done by {@link CSVParser} instances which are either
+ * created per call ({@link #newParser()}) or cached per thread
+ * ({@link #parser()}).
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class CSVFormat {
+
+    /** Comma separated, '"' as quote, trimmed cells, empty cells as "" */
+    public static final CSVFormat CSV = new CSVFormat(',', '"', true, false);
+
+    /** Tab separated, '"' as quote, trimmed cells, empty cells as "" */
+    public static final CSVFormat TSV = new CSVFormat('\t', '"', true, false);
+
+    /** The default formats with other separators, see {@link #of(char)} */
+    private static final ConcurrentMap<Character, CSVFormat> OTHERS = new ConcurrentHashMap<Character, CSVFormat>();
+
+    private final char delimiter;
+
+    private final char quote;
+
+    private final boolean trim;
+
+    private final boolean emptyAsNull;
+
+    /** The parser of each thread using this format */
+    private final ThreadLocal<CSVParser> parsers = new ThreadLocal<CSVParser>() {
+        @Override
+        protected CSVParser initialValue() {
+            return newParser();
+        }
+    };
+
+    private CSVFormat(char delimiter, char quote, boolean trim,
+            boolean emptyAsNull) {
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.trim = trim;
+        this.emptyAsNull = emptyAsNull;
+    }
+
+    /**
+     * Get the default format (see {@link #CSV}) with another separator. The
+     * formats are cached, so that the per thread parsers of a format are
+     * reused.
+     * 
+     * @param delimiter
+     *            The separator character
+     * @return See above
+     */
+    public static CSVFormat of(char delimiter) {
+        if (delimiter == ',')
+            return CSV;
+        if (delimiter == '\t')
+            return TSV;
+        CSVFormat format = OTHERS.get(delimiter);
+        if (format == null) {
+            format = CSV.withDelimiter(delimiter);
+            CSVFormat existing = OTHERS.putIfAbsent(delimiter, format);
+            if (existing != null)
+                format = existing;
+        }
+        return format;
+    }
+
+    /**
+     * @param delimiter
+     *            The separator character
+     * @return A copy of this format with the given separator
+     */
+    public CSVFormat withDelimiter(char delimiter) {
+        return new CSVFormat(delimiter, quote, trim, emptyAsNull);
+    }
+
+    /**
+     * @param quote
+     *            The quote character
+     * @return A copy of this format with the given quote character
+     */
+    public CSVFormat withQuote(char quote) {
+        return new CSVFormat(delimiter, quote, trim, emptyAsNull);
+    }
+
+    /**
+     * @param trim
+     *            Pass <code>true</code> to remove leading and trailing
+     *            whitespace of the cells
+     * @return A copy of this format with the given trim setting
+     */
+    public CSVFormat withTrim(boolean trim) {
+        return new CSVFormat(delimiter, quote, trim, emptyAsNull);
+    }
+
+    /**
+     * @param emptyAsNull
+     *            Pass <code>true</code> to return empty cells as
+     *            <code>null</code> instead of ""
+     * @return A copy of this format with the given setting
+     */
+    public CSVFormat withEmptyAsNull(boolean emptyAsNull) {
+        return new CSVFormat(delimiter, quote, trim, emptyAsNull);
+    }
+
+    /**
+     * @return The separator character
+     */
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @return The quote character
+     */
+    public char getQuote() {
+        return quote;
+    }
+
+    /**
+     * @return <code>true</code> if the cells are trimmed
+     */
+    public boolean isTrim() {
+        return trim;
+    }
+
+    /**
+     * @return <code>true</code> if empty cells are returned as
+     *         <code>null</code>
+     */
+    public boolean isEmptyAsNull() {
+        return emptyAsNull;
+    }
+
+    /**
+     * Creates a new parser. A parser must not be used by several threads at
+     * the same time.
+     * 
+     * @return See above
+     */
+    public CSVParser newParser() {
+        return new CSVParser(this);
+    }
+
+    /**
+     * Get the parser for the current thread
+     * 
+     * @return See above
+     */
+    public CSVParser parser() {
+        return parsers.get();
+    }
+
+    /**
+     * Assemble an array of Strings into a single line. Cells containing the
+     * separator are quoted.
+     * 
+     * @param input
+     *            The String array input
+     * @return See above
+     */
+    public String join(String[] input) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < input.length; i++) {
+            if (input[i] == null)
+                sb.append("");
+            else if (input[i].indexOf(delimiter) > 0)
+                sb.append(quote).append(input[i]).append(quote);
+            else
+                sb.append(input[i]);
+            if (i < input.length - 1)
+                sb.append(delimiter);
+        }
+        return sb.toString();
+    }
+}
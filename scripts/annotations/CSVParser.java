@@ -0,0 +1,188 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import annotations.org.apache.commons.text.StringTokenizer;
+
+/**
+ * Splits lines according to a {@link CSVFormat}. A parser keeps state
+ * between calls and therefore must not be shared between threads; get one
+ * per thread with {@link CSVFormat#parser()} or one per task with
+ * {@link CSVFormat#newParser()}.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class CSVParser {
+
+    private final CSVFormat format;
+
+    private final StringTokenizer t = new StringTokenizer();
+
+    CSVParser(CSVFormat format) {
+        this.format = format;
+        t.setDelimiterChar(format.getDelimiter());
+        t.setQuoteChar(format.getQuote());
+        t.setIgnoreEmptyTokens(false);
+        t.setEmptyTokenAsNull(true);
+    }
+
+    /**
+     * @return The format of this parser
+     */
+    public CSVFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Split a line into its cells
+     * 
+     * @param input
+     *            The line
+     * @return See above
+     */
+    public String[] split(String input) {
+        if (input.isEmpty())
+            return new String[] { format.isEmptyAsNull() ? null : "" };
+
+        boolean trailingSep = input.charAt(input.length() - 1) == format
+                .getDelimiter();
+        if (trailingSep) {
+            // have to ensure that the line doesn't end
+            // with separator char, otherwise the tokenizer
+            // would drop the last (empty) 'cell'
+            input += " ";
+        }
+        t.reset(input);
+        String[] res = t.getTokenArray();
+        if (trailingSep) {
+            // remove the padding again; usually it's the whole last cell,
+            // but it can also be the end of a cell with an unterminated
+            // quote
+            String last = res[res.length - 1];
+            if (last != null && last.endsWith(" "))
+                res[res.length - 1] = last.substring(0, last.length() - 1);
+        }
+        for (int i = 0; i < res.length; i++) {
+            if (res[i] != null && format.isTrim())
+                res[i] = res[i].trim();
+            if (res[i] != null && res[i].isEmpty())
+                res[i] = null;
+            if (res[i] == null && !format.isEmptyAsNull())
+                res[i] = "";
+        }
+        return res;
+    }
+
+    /**
+     * Split a line into its cells without copying them; only the cell
+     * boundaries are stored in the (reusable) buffer. Gives the same cells as
+     * {@link #split(String)}.
+     * 
+     * @param line
+     *            The line
+     * @param fields
+     *            The buffer to store the cell boundaries in
+     * @return The number of cells
+     */
+    public int split(CharSequence line, FieldBuffer fields) {
+        char delimiter = format.getDelimiter();
+        char quote = format.getQuote();
+        boolean trim = format.isTrim();
+        int length = line.length();
+
+        fields.reset(line, format);
+        int pos = 0;
+        while (true) {
+            int start = pos;
+            // like the tokenizer, quotes are only considered if the cell
+            // starts with a quote
+            boolean hasQuote = pos < length && line.charAt(pos) == quote;
+            boolean quoted = false;
+            while (pos < length) {
+                char c = line.charAt(pos);
+                if (c == quote && hasQuote)
+                    quoted = !quoted;
+                else if (c == delimiter && !quoted)
+                    break;
+                pos++;
+            }
+
+            int end = pos;
+            if (trim) {
+                while (start < end && line.charAt(start) <= ' ')
+                    start++;
+                while (end > start && line.charAt(end - 1) <= ' ')
+                    end--;
+            }
+
+            boolean escaped = false;
+            if (hasQuote) {
+                if (isQuoted(line, start, end, quote)) {
+                    start++;
+                    end--;
+                    if (trim) {
+                        while (start < end && line.charAt(start) <= ' ')
+                            start++;
+                        while (end > start && line.charAt(end - 1) <= ' ')
+                            end--;
+                    }
+                } else {
+                    escaped = true;
+                }
+            }
+            fields.add(start, end, escaped);
+
+            if (pos >= length)
+                break;
+            pos++; // skip the delimiter
+        }
+        return fields.size();
+    }
+
+    /**
+     * Checks if the range is enclosed in quotes, without any other quote
+     * inside
+     */
+    private static boolean isQuoted(CharSequence line, int start, int end,
+            char quote) {
+        if (end - start < 2 || line.charAt(start) != quote
+                || line.charAt(end - 1) != quote)
+            return false;
+        for (int i = start + 1; i < end - 1; i++)
+            if (line.charAt(i) == quote)
+                return false;
+        return true;
+    }
+
+    /**
+     * Assemble an array of Strings into a single line, see
+     * {@link CSVFormat#join(String[])}
+     * 
+     * @param input
+     *            The String array input
+     * @return See above
+     */
+    public String join(String[] input) {
+        return format.join(input);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import static annotations.BasicCSVUtils.split;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads a CSV file line by line. The first line must be the header line.
+ * Empty lines are ignored.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class CSVRowReader implements RowSource {
+
+    private final BufferedReader in;
+
+    private final char sep;
+
+    private final String[] headers;
+
+    /**
+     * Opens a CSV file
+     * 
+     * @param inFile
+     *            The file to read
+     * @param sep
+     *            The separator character
+     * @throws IOException
+     */
+    public CSVRowReader(String inFile, char sep) throws IOException {
+        this(new FileReader(inFile), sep);
+    }
+
+    /**
+     * Reads CSV data
+     * 
+     * @param in
+     *            The reader providing the CSV data
+     * @param sep
+     *            The separator character
+     * @throws IOException
+     */
+    public CSVRowReader(Reader in, char sep) throws IOException {
+        this.in = in instanceof BufferedReader ? (BufferedReader) in
+                : new BufferedReader(in);
+        this.sep = sep;
+        String line = nextLine();
+        if (line == null) {
+            this.in.close();
+            throw new IllegalArgumentException("No header line found!");
+        }
+        this.headers = split(line, sep);
+    }
+
+    @Override
+    public String[] getHeaders() {
+        return headers.clone();
+    }
+
+    @Override
+    public String[] next() throws IOException {
+        String line = nextLine();
+        return line != null ? split(line, sep) : null;
+    }
+
+    private String nextLine() throws IOException {
+        String line = null;
+        while ((line = in.readLine()) != null) {
+            if (!line.trim().isEmpty())
+                return line;
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
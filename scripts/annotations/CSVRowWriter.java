@@ -0,0 +1,85 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import static annotations.BasicCSVUtils.join;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes a CSV file line by line.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class CSVRowWriter implements RowSink {
+
+    private final Writer out;
+
+    private final char sep;
+
+    /**
+     * Creates a CSV file
+     * 
+     * @param outFile
+     *            The file to write
+     * @param sep
+     *            The separator character
+     * @throws IOException
+     */
+    public CSVRowWriter(String outFile, char sep) throws IOException {
+        this(new FileWriter(outFile), sep);
+    }
+
+    /**
+     * Writes CSV data
+     * 
+     * @param out
+     *            The writer
+     * @param sep
+     *            The separator character
+     */
+    public CSVRowWriter(Writer out, char sep) {
+        this.out = out instanceof BufferedWriter ? out : new BufferedWriter(
+                out);
+        this.sep = sep;
+    }
+
+    @Override
+    public void writeHeaders(String[] headers) throws IOException {
+        writeRow(headers);
+    }
+
+    @Override
+    public void writeRow(String[] row) throws IOException {
+        out.write(join(row, sep));
+        out.write('\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -30,23 +30,29 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.BitSet;
 import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
  * Some methods making it easier to handle CSV data.
  * 
+ * Each method parses and serializes the whole CSV String. When several
+ * operations are applied one after another, parse the data once into a
+ * {@link Table} instead, which offers the same operations, or use the
+ * streaming operations of {@link RowStreams} for files which don't fit into
+ * memory. De-duplicating and grouping such files is done by sorting them
+ * with an {@link ExternalSorter} first.
+ * 
  * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
  *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
  */
 public class CSVTools {
 
+    /** The number of rows passed at once to batch processors and filters */
+    public static final int BATCH_SIZE = 1024;
+
     /**
      * Reads a text file
      * 
@@ -60,7 +66,7 @@ public class CSVTools {
         StringBuilder output = new StringBuilder();
         String line = null;
         while ((line = r.readLine()) != null) {
-            output.append(line + "\n");
+            output.append(line).append('\n');
         }
         r.close();
         return output.toString();
@@ -84,7 +90,8 @@ public class CSVTools {
 
     /**
      * Change the format, e.g. from tab separated to comma separated. Also makes
-     * sure that all rows have the some amount of columns.
+     * sure that all rows have the some amount of columns. Large inputs are
+     * parsed in parallel (see {@link ParallelCSVParser}).
      * 
      * @param input
      *            The input text
@@ -95,23 +102,8 @@ public class CSVTools {
      * @return The modified CSV string
      */
     public static String format(String input, char fromSep, char toSep) {
-        String[] lines = input.split("\n");
-        StringBuilder output = new StringBuilder();
-
-        // make sure every row has exactly the same amount of columns
-        // as the header
-        int nCols = split(lines[0], fromSep).length;
-
-        for (int i = 0; i < lines.length; i++) {
-            String[] parts = split(lines[i], fromSep);
-            String[] parts2 = new String[nCols];
-            for (int n = 0; n < nCols; n++)
-                if (n < parts.length)
-                    parts2[n] = parts[n];
-            output.append(join(parts2, toSep) + "\n");
-        }
-
-        return output.toString();
+        return new ParallelCSVParser(CSVFormat.of(fromSep)).reformat(input,
+                CSVFormat.of(toSep));
     }
 
     /**
@@ -131,7 +123,7 @@ public class CSVTools {
         String[] lines = input.split("\n");
         StringBuilder output = new StringBuilder();
 
-        HashSet<String> unique = new HashSet<String>();
+        FingerprintSet unique = new FingerprintSet(lines.length);
         String[] headers = split(lines[0], separator);
         String[] newHeaders = new String[columnIndex.length];
         for (int i = 0; i < columnIndex.length; i++) {
@@ -143,17 +135,11 @@ public class CSVTools {
         for (int l = 1; l < lines.length; l++) {
             String parts[] = split(lines[l], separator);
             String[] outline = new String[columnIndex.length];
-
-            String tmp = "";
-            for (int j = 0; j < columnIndex.length; j++) {
+            for (int j = 0; j < columnIndex.length; j++)
                 outline[j] = parts[columnIndex[j]];
-                tmp += parts[columnIndex[j]];
-            }
 
-            if (!unique.contains(tmp)) {
-                output.append(join(outline, separator) + "\n");
-                unique.add(tmp);
-            }
+            if (unique.add(outline))
+                output.append(join(outline, separator)).append('\n');
         }
         return output.toString();
     }
@@ -209,6 +195,10 @@ public class CSVTools {
      * Column A | Column B | Column C | Column D | ...
      * where the values for Column D will be the values from the content table 
      * where both values of Column A and Column B in both tables match.
+     * If there are several matching rows in the content table, the last
+     * one is used; rows without match get empty cells (see {@link HashJoin}).
+     * Files which are sorted by the key columns can be merged without
+     * loading them, see {@link SortMergeJoin}.
      * @param input The input CSV
      * @param content The additional columns
      * @param keys The columns to use as 'Key'
@@ -216,97 +206,9 @@ public class CSVTools {
      * @return The merged result
      */
     public static String mergeColumns(String input, String content, String[] keys, char sep) {
-        String[] inLines = input.split("\n");
-        String[] cLines = content.split("\n");
-        
-        int[] inKeyIndex = new int[keys.length];
-        Arrays.fill(inKeyIndex, -1);
-        int[] cKeyIndex = new int[keys.length];
-        Arrays.fill(cKeyIndex, -1);
-        
-        String[] inParts = split(inLines[0], sep);
-        String[] cParts = split(cLines[0], sep);
-        for (int k=0; k < keys.length; k++) {
-            for (int i=0; i<inParts.length; i++) {
-               if (inParts[i].equals(keys[k]))
-                   inKeyIndex[k] = i;
-            }
-            for (int i=0; i<cParts.length; i++) {
-                if (cParts[i].equals(keys[k]))
-                    cKeyIndex[k] = i;
-             }
-        }
-        
-        for(int k=0; k<keys.length; k++) {
-            if (inKeyIndex[k] == -1)
-                throw new IllegalArgumentException("Key header "+keys[k]+" not found in input!");
-            if (cKeyIndex[k] == -1)
-                throw new IllegalArgumentException("Key header "+keys[k]+" not found in content!");
-        }
-        
-        List<String> tmp = new ArrayList<String>();
-        for (int i=0; i<inParts.length; i++)
-            tmp.add(inParts[i]);
-        for (int i=0; i<cParts.length; i++) {
-            boolean isKey = false;
-            for(String k : keys) {
-                if (k.equals(cParts[i])) {
-                    isKey = true;
-                    break;
-                }
-            }
-            if(!isKey)
-                tmp.add(cParts[i]);
-        }
-        String[] header = new String[tmp.size()];
-        header = tmp.toArray(header);
-        
-        StringBuilder output = new StringBuilder();
-        output.append(join(header, sep) + "\n");
-        
-        int lineLength = inParts.length + cParts.length - keys.length;
-        if (lineLength != header.length) 
-            throw new RuntimeException("Something's wrong here.");
-        
-        for (int l = 1; l < inLines.length; l++) {
-            System.out.println("Merging line "+l+"/"+inLines.length);
-            inParts = split(inLines[l], sep);
-            String outParts[] = new String[lineLength];
-            System.arraycopy(inParts, 0, outParts, 0, inParts.length);
-            
-            for (int c = 1; c < cLines.length; c++) {
-                cParts = split(cLines[c], sep);
-                
-                boolean match = true;
-                for(int k = 0; k < keys.length; k++) {
-                    if (!inParts[inKeyIndex[k]].equals(cParts[cKeyIndex[k]])) {
-                        match = false;
-                        break;
-                    }
-                }
-                
-                if (match) {
-                    tmp = new ArrayList<String>();
-                    for (int i = 0; i < cParts.length; i++) {
-                        boolean isKey = false;
-                        for (int j : cKeyIndex)
-                            if (i == j) {
-                                isKey = true;
-                                break;
-                            }
-                        if (!isKey)
-                            tmp.add(cParts[i]);
-                    }
-                    
-                    for (int i = 0; i < tmp.size(); i++)
-                        outParts[inParts.length + i] = tmp.get(i);
-                }
-            }
-            
-            output.append(join(outParts, sep) + "\n");
-        }
-        
-        return output.toString();
+        Table in = Table.parse(input, sep);
+        Table c = Table.parse(content, sep);
+        return new HashJoin(keys).join(in, c).toString(sep);
     }
     
     /**
@@ -347,8 +249,9 @@ public class CSVTools {
      * Removes rows with duplicate information. Specify one or more columns
      * which should be unique. If there are multiple rows which have the same
      * values for these columns only the first one is kept. If there are
-     * multiple rows and 'compress' column indices are specified, the content of
-     * these columns will we concatenated (separated by ';').
+     * multiple rows and 'compress' column indices are specified, the distinct
+     * non-empty values of these columns will we concatenated (separated by
+     * ';'). See {@link GroupBy} for other ways to aggregate the rows.
      * 
      * E.g. with keyColumns [0, 1] and compress [2]
      * 
@@ -374,54 +277,9 @@ public class CSVTools {
      */
     public static String shrink(String input, int[] keyColumns, int[] compress,
             char separator) {
-        String[] lines = input.split("\n");
-        StringBuilder output = new StringBuilder();
-
-        Map<String, ArrayList<String>> compressed = new LinkedHashMap<String, ArrayList<String>>();
-
-        for (int l = 0; l < lines.length; l++) {
-            String parts[] = split(lines[l], separator);
-
-            String key = "";
-            for (int j = 0; j < keyColumns.length; j++) {
-                key += parts[keyColumns[j]];
-            }
-
-            if (!compressed.containsKey(key)) {
-                ArrayList<String> set = new ArrayList<String>();
-                for (int i = 0; i < compress.length; i++)
-                    set.add(parts[compress[i]]);
-                compressed.put(key, set);
-            } else {
-                ArrayList<String> set = compressed.get(key);
-                for (int i = 0; i < compress.length; i++) {
-                    String s = set.get(i);
-                    if (!s.contains(parts[compress[i]]))
-                        set.set(i, s + ";" + parts[compress[i]]);
-                }
-            }
-        }
-
-        HashSet<String> unique = new HashSet<String>();
-        for (int l = 0; l < lines.length; l++) {
-            String parts[] = split(lines[l], separator);
-
-            String key = "";
-            for (int j = 0; j < keyColumns.length; j++) {
-                key += parts[keyColumns[j]];
-            }
-
-            if (!unique.contains(key)) {
-                for (int i = 0; i < compress.length; i++) {
-                    ArrayList<String> set = compressed.get(key);
-                    parts[compress[i]] = set.get(i);
-                }
-                output.append(join(parts, separator) + "\n");
-                unique.add(key);
-            }
-        }
-
-        return output.toString();
+        Table table = Table.parse(input, separator);
+        table.shrink(keyColumns, compress);
+        return table.toString(separator);
     }
 
     /**
@@ -521,27 +379,40 @@ public class CSVTools {
     public static String removeEmptyColumns(String input, char sep) {
         String[] lines = input.split("\n");
 
-        HashSet<Integer> emptyColumns = new HashSet<Integer>();
-
-        String[] parts = split(lines[0], sep);
-        for (int i = 0; i < parts.length; i++)
-            emptyColumns.add(i);
+        CSVParser parser = CSVFormat.of(sep).newParser();
+        FieldBuffer parts = new FieldBuffer();
 
+        // first pass: find the columns with content
+        int nCols = parser.split(lines[0], parts);
+        BitSet used = new BitSet(nCols);
         for (int l = 1; l < lines.length; l++) {
-            parts = split(lines[l], sep);
-            for (int i = 0; i < parts.length; i++) {
-                if (parts[i] != null && parts[i].trim().length() > 0)
-                    emptyColumns.remove(i);
+            parser.split(lines[l], parts);
+            for (int i = 0; i < parts.size(); i++) {
+                if (!parts.isEmpty(i))
+                    used.set(i);
             }
         }
 
-        List<Integer> cols = new ArrayList<Integer>(emptyColumns);
-        Collections.sort(cols);
-        String result = input;
-        for (int i = cols.size() - 1; i >= 0; i--) {
-            result = removeColumn(result, cols.get(i), sep);
+        // (cells beyond the header don't count, they are always kept)
+        if (used.nextClearBit(0) >= nCols)
+            return input;
+
+        // second pass: only write the used columns
+        StringBuilder output = new StringBuilder(input.length());
+        for (int l = 0; l < lines.length; l++) {
+            parser.split(lines[l], parts);
+            boolean first = true;
+            for (int i = 0; i < parts.size(); i++) {
+                if (i < nCols && !used.get(i))
+                    continue;
+                if (!first)
+                    output.append(sep);
+                parts.appendTo(i, output, sep);
+                first = false;
+            }
+            output.append('\n');
         }
-        return result;
+        return output.toString();
     }
 
     /**
@@ -703,21 +574,47 @@ public class CSVTools {
      */
     public static String process(String input, int colIndex, char sep,
             Processor processor) {
+        return process(input, colIndex, sep, BatchProcessor.of(processor));
+    }
+
+    /**
+     * Process (modify the content of) cells of a specific column, passing
+     * the cells of {@link #BATCH_SIZE} rows at once to the processor. Also
+     * makes sure that there are no duplicate rows in the output.
+     * 
+     * @param input
+     *            The input
+     * @param colIndex
+     *            The column index
+     * @param sep
+     *            The separator
+     * @param processor
+     *            The processor
+     * @return The modified CSV string
+     */
+    public static String process(String input, int colIndex, char sep,
+            BatchProcessor processor) {
         String[] lines = input.split("\n");
         StringBuilder output = new StringBuilder();
 
         // copy header
         output.append(lines[0] + "\n");
 
-        HashSet<String> unique = new HashSet<String>();
+        FingerprintSet unique = new FingerprintSet(lines.length);
+        String[][] rows = new String[BATCH_SIZE][];
+        String[] values = new String[BATCH_SIZE];
 
-        for (int i = 1; i < lines.length; i++) {
-            String[] parts = split(lines[i], sep);
-            parts[colIndex] = processor.process(parts[colIndex]);
-            String line = join(parts, sep);
-            if (!unique.contains(line)) {
-                output.append(line + "\n");
-                unique.add(line);
+        for (int from = 1; from < lines.length; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, lines.length - from);
+            for (int i = 0; i < n; i++) {
+                rows[i] = split(lines[from + i], sep);
+                values[i] = rows[i][colIndex];
+            }
+            processor.process(values, null, n, values);
+            for (int i = 0; i < n; i++) {
+                rows[i][colIndex] = values[i];
+                if (unique.add(rows[i]))
+                    output.append(join(rows[i], sep)).append('\n');
             }
         }
 
@@ -740,24 +637,55 @@ public class CSVTools {
      */
     public static String filter(String input, int colIndex, char sep,
             Filter filter) {
+        return filter(input, colIndex, sep, BatchFilter.of(filter));
+    }
+
+    /**
+     * Remove rows which cells of a specific column match a specific filter,
+     * passing the cells of {@link #BATCH_SIZE} rows at once to the filter.
+     * Only the cells of the filtered column are turned into Strings.
+     * 
+     * @param input
+     *            The input
+     * @param colIndex
+     *            The column index
+     * @param sep
+     *            The separator
+     * @param filter
+     *            The filter
+     * @return The modified CSV string
+     */
+    public static String filter(String input, int colIndex, char sep,
+            BatchFilter filter) {
         String[] lines = input.split("\n");
         StringBuilder output = new StringBuilder();
 
         // copy header
         output.append(lines[0] + "\n");
 
-        for (int i = 1; i < lines.length; i++) {
-            String[] parts = split(lines[i], sep);
-            if (!filter.filter(parts[colIndex])) {
-                output.append(lines[i] + "\n");
+        CSVParser parser = CSVFormat.of(sep).newParser();
+        FieldBuffer parts = new FieldBuffer();
+        String[] values = new String[BATCH_SIZE];
+        int[] sel = new int[BATCH_SIZE];
+
+        for (int from = 1; from < lines.length; from += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, lines.length - from);
+            for (int i = 0; i < n; i++) {
+                parser.split(lines[from + i], parts);
+                values[i] = parts.getString(colIndex);
+                sel[i] = i;
             }
+            int kept = filter.filter(values, sel, n);
+            for (int i = 0; i < kept; i++)
+                output.append(lines[from + sel[i]]).append('\n');
         }
 
         return output.toString();
     }
     
     /**
-     * Get the index of a column by its header name
+     * Get the index of a column by its header name. Only the header line is
+     * parsed, see {@link Schema}.
      * 
      * @param input
      *            The input
@@ -768,11 +696,6 @@ public class CSVTools {
      * @return The index of the column
      */
     public static int getColumnIndex(String input, String name, char sep) {
-        String[] lines = input.split("\n");
-        String[] parts = split(lines[0], sep);
-        for (int i = 0; i < parts.length; i++)
-            if (parts[i].equals(name.trim()))
-                return i;
-        return -1;
+        return Schema.of(input, sep).indexOf(name);
     }
 }
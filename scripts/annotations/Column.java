@@ -0,0 +1,386 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cells of a {@link Table} column. A column either holds its values as
+ * plain Strings, or, if there are only a few distinct values (like the
+ * organism or the image file type in an annotation table), as int codes
+ * into a dictionary of the distinct values. The encoding is chosen by the
+ * table, see {@link #encode(int)}.
+ *
+ * Operations which only depend on the value of a cell (filter, process) are
+ * evaluated as one batch per column (see {@link BatchFilter} and
+ * {@link BatchProcessor}), on dictionary encoded columns the batch only
+ * contains the distinct values. Equal
+ * values of such a column are also the same String instance, so comparing
+ * them is cheap.
+ *
+ * The number of rows is tracked by the table, a column only knows its
+ * capacity.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+abstract class Column {
+
+    /** Columns with less rows are never dictionary encoded */
+    static final int MIN_ROWS_TO_ENCODE = 16;
+
+    /**
+     * Creates a column for the given values, dictionary encoded if there are
+     * at most half as many distinct values as rows.
+     *
+     * @param values
+     *            The values (the array is used by the column if it is not
+     *            encoded)
+     * @param rows
+     *            The number of valid values
+     * @return See above
+     */
+    static Column of(String[] values, int rows) {
+        return new Plain(values).encode(rows);
+    }
+
+    /**
+     * Creates a column with the same value in each row
+     *
+     * @param value
+     *            The value
+     * @param rows
+     *            The number of rows
+     * @return See above
+     */
+    static Column constant(String value, int rows) {
+        Dictionary d = new Dictionary(rows);
+        for (int r = 0; r < rows; r++)
+            d.add(r, value);
+        return d;
+    }
+
+    /**
+     * Get the value of a cell
+     *
+     * @param row
+     *            The row index
+     * @return See above
+     */
+    abstract String get(int row);
+
+    /**
+     * Set the value of a cell
+     *
+     * @param row
+     *            The row index
+     * @param value
+     *            The value
+     */
+    abstract void set(int row, String value);
+
+    /**
+     * Appends a value, growing the column if necessary
+     *
+     * @param row
+     *            The index of the new row (the current number of rows)
+     * @param value
+     *            The value
+     */
+    abstract void add(int row, String value);
+
+    /**
+     * Removes a row
+     *
+     * @param row
+     *            The row index
+     * @param rows
+     *            The number of rows (before the removal)
+     */
+    abstract void remove(int row, int rows);
+
+    /**
+     * Only keep certain rows
+     *
+     * @param keep
+     *            The indices of the rows to keep in ascending order
+     * @param n
+     *            The number of valid entries in keep
+     * @return A column with the selected rows
+     */
+    abstract Column select(int[] keep, int n);
+
+    /**
+     * Replace every value by the result of the processor (<code>null</code>
+     * results are replaced by empty values)
+     *
+     * @param processor
+     *            The processor
+     * @param rows
+     *            The number of rows
+     */
+    abstract void process(BatchProcessor processor, int rows);
+
+    /**
+     * Evaluates a filter on all cells
+     *
+     * @param filter
+     *            The filter
+     * @param rows
+     *            The number of rows
+     * @param keep
+     *            Array (with at least rows elements) for the indices of the
+     *            rows which are not filtered out
+     * @return The number of rows which are not filtered out
+     */
+    abstract int filter(BatchFilter filter, int rows, int[] keep);
+
+    /**
+     * Check if all cells are empty (or only contain whitespace)
+     *
+     * @param rows
+     *            The number of rows
+     * @return See above
+     */
+    boolean isBlank(int rows) {
+        for (int r = 0; r < rows; r++)
+            if (!get(r).trim().isEmpty())
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns an equivalent column with the more suitable encoding
+     *
+     * @param rows
+     *            The number of rows
+     * @return This or a new column
+     */
+    abstract Column encode(int rows);
+
+    /**
+     * A column with the values stored as plain Strings
+     */
+    static class Plain extends Column {
+
+        private String[] values;
+
+        Plain(String[] values) {
+            this.values = values;
+        }
+
+        @Override
+        String get(int row) {
+            return values[row];
+        }
+
+        @Override
+        void set(int row, String value) {
+            values[row] = value;
+        }
+
+        @Override
+        void add(int row, String value) {
+            if (row == values.length)
+                values = Arrays.copyOf(values, Math.max(16, row * 2));
+            values[row] = value;
+        }
+
+        @Override
+        void remove(int row, int rows) {
+            System.arraycopy(values, row + 1, values, row, rows - row - 1);
+        }
+
+        @Override
+        Column select(int[] keep, int n) {
+            String[] result = new String[n];
+            for (int i = 0; i < n; i++)
+                result[i] = values[keep[i]];
+            return new Plain(result);
+        }
+
+        @Override
+        void process(BatchProcessor processor, int rows) {
+            processor.process(values, null, rows, values);
+            for (int r = 0; r < rows; r++)
+                if (values[r] == null)
+                    values[r] = "";
+        }
+
+        @Override
+        int filter(BatchFilter filter, int rows, int[] keep) {
+            for (int r = 0; r < rows; r++)
+                keep[r] = r;
+            return filter.filter(values, keep, rows);
+        }
+
+        @Override
+        Column encode(int rows) {
+            if (rows < MIN_ROWS_TO_ENCODE)
+                return this;
+            Dictionary d = new Dictionary(rows);
+            for (int r = 0; r < rows; r++) {
+                d.add(r, values[r]);
+                if (d.dict.size() > rows / 2)
+                    return this;
+            }
+            return d;
+        }
+    }
+
+    /**
+     * A dictionary encoded column
+     */
+    static class Dictionary extends Column {
+
+        /** The distinct values */
+        private List<String> dict;
+
+        /** Value -> code */
+        private Map<String, Integer> lookup;
+
+        /** The code of each cell */
+        private int[] codes;
+
+        Dictionary(int capacity) {
+            this(new ArrayList<String>(), new HashMap<String, Integer>(),
+                    new int[Math.max(16, capacity)]);
+        }
+
+        private Dictionary(List<String> dict, Map<String, Integer> lookup,
+                int[] codes) {
+            this.dict = dict;
+            this.lookup = lookup;
+            this.codes = codes;
+        }
+
+        /**
+         * Get the code of a value, adding it to the dictionary if necessary
+         */
+        private int code(String value) {
+            Integer code = lookup.get(value);
+            if (code == null) {
+                code = dict.size();
+                dict.add(value);
+                lookup.put(value, code);
+            }
+            return code.intValue();
+        }
+
+        @Override
+        String get(int row) {
+            return dict.get(codes[row]);
+        }
+
+        @Override
+        void set(int row, String value) {
+            codes[row] = code(value);
+        }
+
+        @Override
+        void add(int row, String value) {
+            if (row == codes.length)
+                codes = Arrays.copyOf(codes, Math.max(16, row * 2));
+            codes[row] = code(value);
+        }
+
+        @Override
+        void remove(int row, int rows) {
+            System.arraycopy(codes, row + 1, codes, row, rows - row - 1);
+        }
+
+        @Override
+        Column select(int[] keep, int n) {
+            int[] result = new int[n];
+            for (int i = 0; i < n; i++)
+                result[i] = codes[keep[i]];
+            return new Dictionary(dict, lookup, result);
+        }
+
+        @Override
+        void process(BatchProcessor processor, int rows) {
+            // process each used value once; values which are mapped onto
+            // the same result share one code afterwards
+            String[] values = dict.toArray(new String[dict.size()]);
+            int[] sel = new int[values.length];
+            int n = used(rows, sel);
+            String[] results = new String[values.length];
+            processor.process(values, sel, n, results);
+
+            Dictionary d = new Dictionary(0);
+            int[] remap = new int[values.length];
+            for (int i = 0; i < n; i++)
+                remap[sel[i]] = d.code(results[sel[i]] == null ? ""
+                        : results[sel[i]]);
+            for (int r = 0; r < rows; r++)
+                codes[r] = remap[codes[r]];
+            dict = d.dict;
+            lookup = d.lookup;
+        }
+
+        @Override
+        int filter(BatchFilter filter, int rows, int[] keep) {
+            String[] values = dict.toArray(new String[dict.size()]);
+            int[] sel = new int[values.length];
+            int n = filter.filter(values, sel, used(rows, sel));
+            boolean[] keepCode = new boolean[values.length];
+            for (int i = 0; i < n; i++)
+                keepCode[sel[i]] = true;
+            int kept = 0;
+            for (int r = 0; r < rows; r++)
+                if (keepCode[codes[r]])
+                    keep[kept++] = r;
+            return kept;
+        }
+
+        @Override
+        Column encode(int rows) {
+            if (rows >= MIN_ROWS_TO_ENCODE && dict.size() <= rows / 2)
+                return this;
+            // too many (possibly unused) values, start over
+            String[] values = new String[Math.max(16, rows)];
+            for (int r = 0; r < rows; r++)
+                values[r] = get(r);
+            return new Plain(values).encode(rows);
+        }
+
+        /**
+         * Writes the codes which are used by at least one row into sel (in
+         * ascending order) and returns their number
+         */
+        private int used(int rows, int[] sel) {
+            boolean[] used = new boolean[dict.size()];
+            for (int r = 0; r < rows; r++)
+                used[codes[r]] = true;
+            int n = 0;
+            for (int c = 0; c < used.length; c++)
+                if (used[c])
+                    sel[n++] = c;
+            return n;
+        }
+    }
+}
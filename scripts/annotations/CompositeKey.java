@@ -0,0 +1,119 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.util.Arrays;
+
+/**
+ * A key made up of the values of several columns. Two keys are equal if all
+ * their values are equal, i.e. in contrast to simply concatenating the values
+ * ("AB","C") and ("A","BC") are different keys.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class CompositeKey implements Comparable<CompositeKey> {
+
+    private final String[] values;
+
+    private final int hash;
+
+    /**
+     * Creates a new key
+     *
+     * @param values
+     *            The values (the array is not copied, so it must not be
+     *            modified afterwards)
+     */
+    public CompositeKey(String... values) {
+        this.values = values;
+        this.hash = Arrays.hashCode(values);
+    }
+
+    /**
+     * Creates a key from certain cells of a row
+     *
+     * @param row
+     *            The row
+     * @param columns
+     *            The column indices of the key columns
+     * @return See above
+     */
+    public static CompositeKey of(String[] row, int[] columns) {
+        String[] values = new String[columns.length];
+        for (int i = 0; i < columns.length; i++)
+            values[i] = row[columns[i]];
+        return new CompositeKey(values);
+    }
+
+    /**
+     * @return The number of values
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Get a value of the key
+     *
+     * @param index
+     *            The index
+     * @return See above
+     */
+    public String get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof CompositeKey))
+            return false;
+        CompositeKey other = (CompositeKey) obj;
+        return hash == other.hash && Arrays.equals(values, other.values);
+    }
+
+    /**
+     * Compares the keys value by value
+     */
+    @Override
+    public int compareTo(CompositeKey other) {
+        int n = Math.min(values.length, other.values.length);
+        for (int i = 0; i < n; i++) {
+            int c = values[i].compareTo(other.values[i]);
+            if (c != 0)
+                return c;
+        }
+        return values.length - other.values.length;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(values);
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts the rows of a {@link RowSource} which do not have to fit into
+ * memory. Rows are collected until the memory budget is used up, then they
+ * are sorted and written to a temporary file (a 'run'). Finally the runs are
+ * merged (k-way) while the result is read. If all rows fit into the budget
+ * nothing is written to disk.
+ *
+ * The sort is stable, i.e. rows with the same key keep their input order.
+ * Together with {@link GroupBy#apply(RowSource, RowSink, ExternalSorter)}
+ * this is used for grouping and de-duplicating tables larger than the heap.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class ExternalSorter {
+
+    /** The default memory budget (64 MB) */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+    /** The maximum number of runs which are merged at once */
+    private static final int MAX_FAN_IN = 64;
+
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+    private File tempDir = null;
+
+    /**
+     * Set the (approximate) amount of memory used for buffering rows
+     * (default: {@link #DEFAULT_MEMORY_BUDGET})
+     *
+     * @param bytes
+     *            The memory budget in bytes
+     * @return This sorter
+     */
+    public ExternalSorter setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+        return this;
+    }
+
+    /**
+     * Set the directory for the temporary files (default: the system's
+     * temporary directory)
+     *
+     * @param dir
+     *            The directory
+     * @return This sorter
+     */
+    public ExternalSorter setTempDirectory(File dir) {
+        this.tempDir = dir;
+        return this;
+    }
+
+    /**
+     * Sort the rows of a source by certain columns (as Strings). The source
+     * is read completely and closed before this method returns.
+     *
+     * @param in
+     *            The source
+     * @param keyColumns
+     *            The indices of the columns to sort by; if none are given the
+     *            rows are sorted by all columns
+     * @return A source providing the sorted rows; it has to be closed to
+     *         delete the temporary files.
+     * @throws IOException
+     */
+    public RowSource sort(RowSource in, int... keyColumns) throws IOException {
+        return sort(in, comparator(keyColumns), false);
+    }
+
+    /**
+     * Sort the rows of a source by all columns and remove duplicate rows.
+     * The source is read completely and closed before this method returns.
+     *
+     * @param in
+     *            The source
+     * @return A source providing the sorted, unique rows; it has to be closed
+     *         to delete the temporary files.
+     * @throws IOException
+     */
+    public RowSource distinct(RowSource in) throws IOException {
+        return sort(in, comparator(), true);
+    }
+
+    private RowSource sort(RowSource in, Comparator<String[]> order,
+            boolean distinct) throws IOException {
+        String[] headers = in.getHeaders();
+        List<File> runs = new ArrayList<File>();
+        List<String[]> buffer = new ArrayList<String[]>();
+        try {
+            long used = 0;
+            String[] row = null;
+            while ((row = in.next()) != null) {
+                buffer.add(row);
+                used += estimateSize(row);
+                if (used >= memoryBudget) {
+                    runs.add(writeRun(buffer, order, distinct));
+                    buffer.clear();
+                    used = 0;
+                }
+            }
+            in.close();
+
+            Collections.sort(buffer, order);
+            if (distinct)
+                removeAdjacentDuplicates(buffer);
+            if (runs.isEmpty())
+                return new ListSource(headers, buffer);
+
+            if (!buffer.isEmpty())
+                runs.add(writeRun(buffer, order, distinct));
+            buffer = null;
+            while (runs.size() > MAX_FAN_IN)
+                runs = mergePass(runs, order, distinct);
+            return new MergeSource(headers, runs, order, distinct);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            for (File run : runs)
+                run.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Merges groups of consecutive runs into one run each (so that the
+     * order of equal rows is kept).
+     */
+    private List<File> mergePass(List<File> runs, Comparator<String[]> order,
+            boolean distinct) throws IOException {
+        List<File> result = new ArrayList<File>();
+        for (int i = 0; i < runs.size(); i += MAX_FAN_IN) {
+            List<File> group = runs.subList(i,
+                    Math.min(i + MAX_FAN_IN, runs.size()));
+            File merged = createTempFile();
+            MergeSource src = new MergeSource(null, new ArrayList<File>(group),
+                    order, distinct);
+            try (RunWriter w = new RunWriter(merged)) {
+                String[] row = null;
+                while ((row = src.next()) != null)
+                    w.write(row);
+            } finally {
+                src.close();
+            }
+            result.add(merged);
+        }
+        return result;
+    }
+
+    private File writeRun(List<String[]> rows, Comparator<String[]> order,
+            boolean distinct) throws IOException {
+        Collections.sort(rows, order);
+        if (distinct)
+            removeAdjacentDuplicates(rows);
+        File run = createTempFile();
+        try (RunWriter w = new RunWriter(run)) {
+            for (String[] row : rows)
+                w.write(row);
+        }
+        return run;
+    }
+
+    private File createTempFile() throws IOException {
+        File f = File.createTempFile("sort", ".run", tempDir);
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static void removeAdjacentDuplicates(List<String[]> rows) {
+        int n = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            if (n == 0 || compareRows(rows.get(n - 1), rows.get(i)) != 0)
+                rows.set(n++, rows.get(i));
+        }
+        rows.subList(n, rows.size()).clear();
+    }
+
+    /**
+     * Rough estimate of the heap used by a row
+     */
+    private static long estimateSize(String[] row) {
+        long size = 16 + 8L * row.length;
+        for (String cell : row)
+            if (cell != null)
+                size += 40 + 2L * cell.length();
+        return size;
+    }
+
+    private static String cell(String[] row, int col) {
+        return col < row.length && row[col] != null ? row[col] : "";
+    }
+
+    /**
+     * Compares two rows column by column
+     */
+    private static int compareRows(String[] row1, String[] row2) {
+        int n = Math.max(row1.length, row2.length);
+        for (int c = 0; c < n; c++) {
+            int cmp = cell(row1, c).compareTo(cell(row2, c));
+            if (cmp != 0)
+                return cmp;
+        }
+        return 0;
+    }
+
+    private static Comparator<String[]> comparator(final int... keyColumns) {
+        if (keyColumns.length == 0)
+            return ExternalSorter::compareRows;
+        return (row1, row2) -> {
+            for (int k : keyColumns) {
+                int cmp = cell(row1, k).compareTo(cell(row2, k));
+                if (cmp != 0)
+                    return cmp;
+            }
+            return 0;
+        };
+    }
+
+    /**
+     * Writes rows to a run file: number of cells, then per cell the length
+     * of the UTF-8 bytes (-1 for null) followed by the bytes.
+     */
+    private static class RunWriter implements AutoCloseable {
+
+        private final DataOutputStream out;
+
+        RunWriter(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file), 1 << 16));
+        }
+
+        void write(String[] row) throws IOException {
+            out.writeInt(row.length);
+            for (String cell : row) {
+                if (cell == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] b = cell.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(b.length);
+                    out.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the rows of a run file
+     */
+    private static class RunReader {
+
+        private final DataInputStream in;
+
+        RunReader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file), 1 << 16));
+        }
+
+        String[] read() throws IOException {
+            int n;
+            try {
+                n = in.readInt();
+            } catch (EOFException e) {
+                return null;
+            }
+            String[] row = new String[n];
+            for (int c = 0; c < n; c++) {
+                int len = in.readInt();
+                if (len >= 0) {
+                    byte[] b = new byte[len];
+                    in.readFully(b);
+                    row[c] = new String(b, StandardCharsets.UTF_8);
+                }
+            }
+            return row;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Provides the rows of a list (if everything fitted into memory)
+     */
+    private static class ListSource implements RowSource {
+
+        private final String[] headers;
+
+        private Iterator<String[]> it;
+
+        ListSource(String[] headers, List<String[]> rows) {
+            this.headers = headers;
+            this.it = rows.iterator();
+        }
+
+        @Override
+        public String[] getHeaders() {
+            return headers.clone();
+        }
+
+        @Override
+        public String[] next() {
+            return it != null && it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public void close() {
+            it = null;
+        }
+    }
+
+    /**
+     * Merges the rows of several runs and deletes the run files when closed
+     */
+    private static class MergeSource implements RowSource {
+
+        private final String[] headers;
+
+        private final List<File> runs;
+
+        private final List<RunReader> readers = new ArrayList<RunReader>();
+
+        private final PriorityQueue<Head> queue;
+
+        private final boolean distinct;
+
+        private String[] last = null;
+
+        MergeSource(String[] headers, List<File> runs,
+                final Comparator<String[]> order, boolean distinct)
+                throws IOException {
+            this.headers = headers;
+            this.runs = runs;
+            this.distinct = distinct;
+            // on equal rows the earlier run wins, which keeps the sort
+            // stable
+            this.queue = new PriorityQueue<Head>(Math.max(1, runs.size()),
+                    (h1, h2) -> {
+                        int cmp = order.compare(h1.row, h2.row);
+                        return cmp != 0 ? cmp : h1.run - h2.run;
+                    });
+            try {
+                for (int i = 0; i < runs.size(); i++) {
+                    RunReader r = new RunReader(runs.get(i));
+                    readers.add(r);
+                    String[] row = r.read();
+                    if (row != null)
+                        queue.add(new Head(i, row));
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public String[] getHeaders() {
+            return headers.clone();
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            while (!queue.isEmpty()) {
+                Head h = queue.poll();
+                String[] row = h.row;
+                h.row = readers.get(h.run).read();
+                if (h.row != null)
+                    queue.add(h);
+                if (distinct && last != null && compareRows(last, row) == 0)
+                    continue;
+                last = row;
+                return row;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            queue.clear();
+            try {
+                for (RunReader r : readers)
+                    r.close();
+            } finally {
+                for (File run : runs)
+                    run.delete();
+            }
+        }
+    }
+
+    /**
+     * The current row of a run
+     */
+    private static class Head {
+
+        private final int run;
+
+        private String[] row;
+
+        Head(int run, String[] row) {
+            this.run = run;
+            this.row = row;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Reusable buffer holding the cell boundaries of a line, filled by
+ * {@link CSVParser#split(CharSequence, FieldBuffer)}. The cells are not
+ * copied, only their start and end offsets within the line are kept, and
+ * trimming is done by adjusting the offsets. Reusing the same buffer for
+ * every line of a file means that splitting doesn't allocate anything (as
+ * long as the number of cells doesn't grow).
+ * 
+ * Cells which contain escaped quotes ("") can't be represented as a plain
+ * range of the line, they are decoded when accessed.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class FieldBuffer {
+
+    private CharSequence line;
+
+    private CSVFormat format;
+
+    private int[] starts = new int[16];
+
+    private int[] ends = new int[16];
+
+    /** Marks the cells which contain quotes that have to be removed */
+    private boolean[] escaped = new boolean[16];
+
+    private int size = 0;
+
+    void reset(CharSequence line, CSVFormat format) {
+        this.line = line;
+        this.format = format;
+        this.size = 0;
+    }
+
+    void add(int start, int end, boolean escaped) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            this.escaped = Arrays.copyOf(this.escaped, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        this.escaped[size] = escaped;
+        size++;
+    }
+
+    /**
+     * @return The line the cells belong to
+     */
+    public CharSequence getLine() {
+        return line;
+    }
+
+    /**
+     * @return The number of cells
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i
+     *            The cell index
+     * @return The start offset of the cell within the line
+     */
+    public int start(int i) {
+        check(i);
+        return starts[i];
+    }
+
+    /**
+     * @param i
+     *            The cell index
+     * @return The end offset (exclusive) of the cell within the line
+     */
+    public int end(int i) {
+        check(i);
+        return ends[i];
+    }
+
+    /**
+     * @param i
+     *            The cell index
+     * @return <code>true</code> if the cell contains escaped quotes, i.e.
+     *         it is not just the range {@link #start(int)} to
+     *         {@link #end(int)} of the line
+     */
+    public boolean isEscaped(int i) {
+        check(i);
+        return escaped[i];
+    }
+
+    /**
+     * @param i
+     *            The cell index
+     * @return <code>true</code> if the cell is empty
+     */
+    public boolean isEmpty(int i) {
+        check(i);
+        return starts[i] == ends[i];
+    }
+
+    /**
+     * @param i
+     *            The cell index
+     * @return The length of the cell
+     */
+    public int length(int i) {
+        return escaped[i] ? getString(i).length() : end(i) - start(i);
+    }
+
+    /**
+     * @param i
+     *            The cell index
+     * @param pos
+     *            The position within the cell
+     * @return The character at this position
+     */
+    public char charAt(int i, int pos) {
+        if (escaped[i])
+            return getString(i).charAt(pos);
+        return line.charAt(start(i) + pos);
+    }
+
+    /**
+     * Compares the content of a cell
+     * 
+     * @param i
+     *            The cell index
+     * @param s
+     *            The String to compare with
+     * @return <code>true</code> if the cell has exactly the same content
+     */
+    public boolean contentEquals(int i, CharSequence s) {
+        if (escaped[i])
+            return getString(i).contentEquals(s);
+        int start = start(i);
+        int length = ends[i] - start;
+        if (length != s.length())
+            return false;
+        for (int j = 0; j < length; j++)
+            if (line.charAt(start + j) != s.charAt(j))
+                return false;
+        return true;
+    }
+
+    /**
+     * Calculates the hash code of a cell (same as the hash code of the
+     * String of the cell)
+     * 
+     * @param i
+     *            The cell index
+     * @return See above
+     */
+    public int hashCode(int i) {
+        if (escaped[i])
+            return getString(i).hashCode();
+        int h = 0;
+        for (int j = start(i); j < ends[i]; j++)
+            h = 31 * h + line.charAt(j);
+        return h;
+    }
+
+    /**
+     * Get the content of a cell as String (allocates a new String)
+     * 
+     * @param i
+     *            The cell index
+     * @return See above; <code>null</code> for empty cells, if the format
+     *         treats empty cells as <code>null</code>
+     */
+    public String getString(int i) {
+        check(i);
+        if (starts[i] == ends[i])
+            return format.isEmptyAsNull() ? null : "";
+        if (!escaped[i])
+            return line.subSequence(starts[i], ends[i]).toString();
+        return decode(i);
+    }
+
+    /**
+     * Get all cells as Strings
+     * 
+     * @return See above
+     */
+    public String[] toArray() {
+        String[] result = new String[size];
+        for (int i = 0; i < size; i++)
+            result[i] = getString(i);
+        return result;
+    }
+
+    /**
+     * Append the content of a cell
+     * 
+     * @param i
+     *            The cell index
+     * @param sb
+     *            The StringBuilder to append to
+     */
+    public void appendTo(int i, StringBuilder sb) {
+        check(i);
+        if (escaped[i])
+            sb.append(decode(i));
+        else
+            sb.append(line, starts[i], ends[i]);
+    }
+
+    /**
+     * Append the content of a cell, quoted if it contains the given
+     * separator (see {@link CSVFormat#join(String[])})
+     * 
+     * @param i
+     *            The cell index
+     * @param sb
+     *            The StringBuilder to append to
+     * @param sep
+     *            The separator of the output
+     */
+    public void appendTo(int i, StringBuilder sb, char sep) {
+        check(i);
+        if (escaped[i]) {
+            String s = decode(i);
+            if (s != null && s.indexOf(sep) > 0)
+                sb.append(format.getQuote()).append(s).append(format.getQuote());
+            else if (s != null)
+                sb.append(s);
+            return;
+        }
+        boolean quoteIt = false;
+        for (int j = starts[i] + 1; j < ends[i] && !quoteIt; j++)
+            quoteIt = line.charAt(j) == sep;
+        if (quoteIt)
+            sb.append(format.getQuote());
+        sb.append(line, starts[i], ends[i]);
+        if (quoteIt)
+            sb.append(format.getQuote());
+    }
+
+    /**
+     * Removes the quotes of a cell, "" within quotes is a single "
+     */
+    private String decode(int i) {
+        StringBuilder sb = new StringBuilder(ends[i] - starts[i]);
+        char quote = format.getQuote();
+        boolean quoted = false;
+        for (int j = starts[i]; j < ends[i]; j++) {
+            char c = line.charAt(j);
+            if (c != quote) {
+                sb.append(c);
+            } else if (quoted && j + 1 < ends[i] && line.charAt(j + 1) == quote) {
+                sb.append(quote);
+                j++;
+            } else {
+                quoted = !quoted;
+            }
+        }
+        String s = format.isTrim() ? sb.toString().trim() : sb.toString();
+        return s.isEmpty() && format.isEmptyAsNull() ? null : s;
+    }
+
+    /**
+     * Write the content of a cell, quoted if it contains the given separator
+     * (see {@link CSVFormat#join(String[])})
+     * 
+     * @param i
+     *            The cell index
+     * @param w
+     *            The writer
+     * @param sep
+     *            The separator of the output
+     * @param quote
+     *            The quote character of the output
+     * @throws IOException
+     */
+    public void write(int i, Writer w, char sep, char quote)
+            throws IOException {
+        check(i);
+        if (escaped[i] || !(line instanceof String)) {
+            String s = getString(i);
+            if (s == null)
+                return;
+            if (s.indexOf(sep) > 0)
+                w.write(quote + s + quote);
+            else
+                w.write(s);
+            return;
+        }
+        boolean quoteIt = false;
+        for (int j = starts[i] + 1; j < ends[i] && !quoteIt; j++)
+            quoteIt = line.charAt(j) == sep;
+        if (quoteIt)
+            w.write(quote);
+        w.write((String) line, starts[i], ends[i] - starts[i]);
+        if (quoteIt)
+            w.write(quote);
+    }
+
+    private void check(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Cell " + i
+                    + " out of bounds (cells: " + size + ")");
+    }
+}
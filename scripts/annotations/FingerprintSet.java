@@ -0,0 +1,221 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import java.util.function.IntPredicate;
+
+/**
+ * A set of rows which only keeps a 128-bit fingerprint of each row in a
+ * primitive, open-addressing hash table (about 20 bytes per row), instead of
+ * the rows themselves. Used to make sure that the output of an operation
+ * only contains unique rows.
+ *
+ * With 128 bits an accidental collision is practically impossible, but if
+ * the rows are still available anyway (e.g. in a {@link Table}) the exact
+ * mode ({@link #add(String[], int, IntPredicate)}) can be used, which checks
+ * rows with the same fingerprint for actual equality. Both modes must not be
+ * mixed on the same set.
+ *
+ * Not thread-safe.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class FingerprintSet {
+
+    private static final long C1 = 0x87c37b91114253d5L;
+
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private static final long C3 = 0x9e3779b97f4a7c15L;
+
+    private static final long C4 = 0xc2b2ae3d27d4eb4fL;
+
+    /** The fingerprints, two longs per slot; (0,0) marks an empty slot */
+    private long[] slots;
+
+    /** The row ordinals per slot (only used in exact mode) */
+    private int[] ordinals;
+
+    private int mask;
+
+    private int size = 0;
+
+    /** The fingerprint of the current row */
+    private long h1, h2;
+
+    /**
+     * Creates a new set
+     */
+    public FingerprintSet() {
+        this(64);
+    }
+
+    /**
+     * Creates a new set
+     *
+     * @param expectedRows
+     *            The expected number of rows
+     */
+    public FingerprintSet(int expectedRows) {
+        int cap = Integer.highestOneBit(Math.max(16, expectedRows * 4 / 3)) * 2;
+        slots = new long[cap * 2];
+        mask = cap - 1;
+    }
+
+    /**
+     * Adds a row
+     *
+     * @param row
+     *            The row
+     * @return True if the set did not contain this row yet
+     */
+    public boolean add(String[] row) {
+        fingerprint(row);
+        return insert(-1, null);
+    }
+
+    /**
+     * Adds a row, checking rows with the same fingerprint for actual
+     * equality.
+     *
+     * @param row
+     *            The row
+     * @param ordinal
+     *            An ordinal which identifies this row, e.g. its row index
+     * @param sameRow
+     *            Tests if the row with the given ordinal (which was added
+     *            before) is equal to this row
+     * @return True if the set did not contain this row yet
+     */
+    public boolean add(String[] row, int ordinal, IntPredicate sameRow) {
+        if (ordinals == null) {
+            if (size > 0)
+                throw new IllegalStateException(
+                        "Set is not used in exact mode");
+            ordinals = new int[mask + 1];
+        }
+        fingerprint(row);
+        return insert(ordinal, sameRow);
+    }
+
+    /**
+     * @return The number of rows in the set
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean insert(int ordinal, IntPredicate sameRow) {
+        int i = (int) h2 & mask;
+        while (true) {
+            long s1 = slots[2 * i];
+            long s2 = slots[2 * i + 1];
+            if (s1 == 0 && s2 == 0)
+                break;
+            if (s1 == h1 && s2 == h2
+                    && (sameRow == null || sameRow.test(ordinals[i])))
+                return false;
+            i = (i + 1) & mask;
+        }
+        slots[2 * i] = h1;
+        slots[2 * i + 1] = h2;
+        if (ordinals != null)
+            ordinals[i] = ordinal;
+        if (++size > (mask + 1) / 4 * 3)
+            grow();
+        return true;
+    }
+
+    private void grow() {
+        long[] oldSlots = slots;
+        int[] oldOrdinals = ordinals;
+        int cap = (mask + 1) * 2;
+        slots = new long[cap * 2];
+        if (oldOrdinals != null)
+            ordinals = new int[cap];
+        mask = cap - 1;
+        for (int j = 0; j < oldSlots.length / 2; j++) {
+            long s1 = oldSlots[2 * j];
+            long s2 = oldSlots[2 * j + 1];
+            if (s1 == 0 && s2 == 0)
+                continue;
+            int i = (int) s2 & mask;
+            while (slots[2 * i] != 0 || slots[2 * i + 1] != 0)
+                i = (i + 1) & mask;
+            slots[2 * i] = s1;
+            slots[2 * i + 1] = s2;
+            if (oldOrdinals != null)
+                ordinals[i] = oldOrdinals[j];
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a row into h1/h2. Every cell is prefixed
+     * with its length, so that ("AB","C") and ("A","BC") differ.
+     */
+    private void fingerprint(String[] row) {
+        h1 = C3;
+        h2 = C4;
+        for (String cell : row) {
+            if (cell == null) {
+                mix(-1);
+                continue;
+            }
+            int n = cell.length();
+            mix(n);
+            int i = 0;
+            for (; i + 3 < n; i += 4)
+                mix((long) cell.charAt(i) | (long) cell.charAt(i + 1) << 16
+                        | (long) cell.charAt(i + 2) << 32
+                        | (long) cell.charAt(i + 3) << 48);
+            if (i < n) {
+                long v = 0;
+                for (int shift = 0; i < n; i++, shift += 16)
+                    v |= (long) cell.charAt(i) << shift;
+                mix(v);
+            }
+        }
+        h1 = fmix(h1 ^ row.length);
+        h2 = fmix(h2 + h1);
+        if (h1 == 0 && h2 == 0)
+            h2 = 1;
+    }
+
+    private void mix(long v) {
+        h1 = Long.rotateLeft(h1 ^ Long.rotateLeft(v * C1, 31) * C2, 27) * 5
+                + 0x52dce729;
+        h2 = Long.rotateLeft(h2 ^ Long.rotateLeft(v * C2, 33) * C1, 31) * 5
+                + 0x38495ab5;
+    }
+
+    /** The MurmurHash3 finalizer */
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
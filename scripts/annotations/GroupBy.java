@@ -0,0 +1,240 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import annotations.Aggregator.Accumulator;
+
+/**
+ * Groups the rows of a table by the values of one or more key columns. Only
+ * one row per group is kept: the cells of the aggregated columns are
+ * combined by their {@link Aggregator}, all other cells are taken from the
+ * first row of the group. The groups are kept in the order of their first
+ * row.
+ * 
+ * E.g. grouping by columns [0, 1], with a
+ * {@link Aggregators#distinctConcat(String)} on column 2
+ * 
+ * <pre>
+ * Column A | Column B | Column C
+ * A          B          1
+ * A          B          2
+ * A          C          1
+ * </pre>
+ * 
+ * will result in:
+ * 
+ * <pre>
+ * Column A | Column B | Column C
+ * A          B          1;2
+ * A          C          1
+ * </pre>
+ * 
+ * The input is read once; the memory needed is proportional to the number of
+ * groups, not to the number of rows.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class GroupBy {
+
+    private final int[] keyColumns;
+
+    private int[] aggColumns = new int[0];
+
+    private Aggregator[] aggregators = new Aggregator[0];
+
+    /**
+     * Creates a new group-by
+     * 
+     * @param keyColumns
+     *            The indices of the key columns
+     */
+    public GroupBy(int... keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * Aggregate the cells of a column
+     * 
+     * @param column
+     *            The column index
+     * @param aggregator
+     *            The aggregator
+     * @return This group-by
+     */
+    public GroupBy aggregate(int column, Aggregator aggregator) {
+        int n = aggColumns.length;
+        aggColumns = Arrays.copyOf(aggColumns, n + 1);
+        aggregators = Arrays.copyOf(aggregators, n + 1);
+        aggColumns[n] = column;
+        aggregators[n] = aggregator;
+        return this;
+    }
+
+    /**
+     * Group the rows of a table
+     * 
+     * @param input
+     *            The table
+     * @return A new table with one row per group
+     */
+    public Table apply(Table input) {
+        Map<CompositeKey, Group> groups = new LinkedHashMap<CompositeKey, Group>();
+        String[] key = new String[keyColumns.length];
+        for (int r = 0; r < input.getRowCount(); r++) {
+            for (int k = 0; k < keyColumns.length; k++)
+                key[k] = input.get(r, keyColumns[k]);
+            CompositeKey ck = new CompositeKey(key);
+            Group g = groups.get(ck);
+            if (g == null) {
+                g = new Group(input.getRow(r));
+                groups.put(ck, g);
+                key = new String[keyColumns.length];
+            }
+            for (int i = 0; i < aggColumns.length; i++)
+                g.accumulators[i].add(input.get(r, aggColumns[i]));
+        }
+
+        Table result = new Table(input.getHeaders());
+        for (Group g : groups.values())
+            result.addRow(g.getRow());
+        result.encodeColumns();
+        return result;
+    }
+
+    /**
+     * Group the rows of a source and write the groups to a sink (the groups
+     * are written after the source is exhausted). Source and sink are
+     * closed.
+     * 
+     * @param in
+     *            The source
+     * @param out
+     *            The sink
+     * @throws IOException
+     */
+    public void apply(RowSource in, RowSink out) throws IOException {
+        try {
+            Map<CompositeKey, Group> groups = new LinkedHashMap<CompositeKey, Group>();
+            String[] row = null;
+            while ((row = in.next()) != null) {
+                CompositeKey ck = CompositeKey.of(row, keyColumns);
+                Group g = groups.get(ck);
+                if (g == null) {
+                    g = new Group(row);
+                    groups.put(ck, g);
+                }
+                for (int i = 0; i < aggColumns.length; i++)
+                    g.accumulators[i].add(aggColumns[i] < row.length ? row[aggColumns[i]] : "");
+            }
+
+            out.writeHeaders(in.getHeaders());
+            for (Group g : groups.values())
+                out.writeRow(g.getRow());
+        } finally {
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Group the rows of a source which does not fit into memory and write the
+     * groups to a sink. The rows are sorted by the key columns first (see
+     * {@link ExternalSorter}), so that only the current group has to be kept
+     * in memory. In contrast to {@link #apply(RowSource, RowSink)} the groups
+     * are written in the order of their keys. Source and sink are closed.
+     * 
+     * @param in
+     *            The source
+     * @param out
+     *            The sink
+     * @param sorter
+     *            The sorter to use
+     * @throws IOException
+     */
+    public void apply(RowSource in, RowSink out, ExternalSorter sorter)
+            throws IOException {
+        RowSource sorted = null;
+        try {
+            sorted = sorter.sort(in, keyColumns);
+            out.writeHeaders(sorted.getHeaders());
+            CompositeKey current = null;
+            Group g = null;
+            String[] row = null;
+            while ((row = sorted.next()) != null) {
+                CompositeKey ck = CompositeKey.of(row, keyColumns);
+                if (!ck.equals(current)) {
+                    if (g != null)
+                        out.writeRow(g.getRow());
+                    g = new Group(row);
+                    current = ck;
+                }
+                for (int i = 0; i < aggColumns.length; i++)
+                    g.accumulators[i].add(aggColumns[i] < row.length ? row[aggColumns[i]] : "");
+            }
+            if (g != null)
+                out.writeRow(g.getRow());
+        } finally {
+            try {
+                if (sorted != null)
+                    sorted.close();
+                else
+                    in.close();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * The first row of a group and the accumulators for the aggregated
+     * columns
+     */
+    private class Group {
+
+        private final String[] first;
+
+        private final Accumulator[] accumulators;
+
+        Group(String[] first) {
+            this.first = first;
+            this.accumulators = new Accumulator[aggregators.length];
+            for (int i = 0; i < aggregators.length; i++)
+                accumulators[i] = aggregators[i].newAccumulator();
+        }
+
+        String[] getRow() {
+            for (int i = 0; i < aggColumns.length; i++)
+                if (aggColumns[i] < first.length)
+                    first[aggColumns[i]] = accumulators[i].getResult();
+            return first;
+        }
+    }
+}
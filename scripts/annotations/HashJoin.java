@@ -0,0 +1,288 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Joins the columns of a 'content' table onto an 'input' table using certain
+ * columns as 'Key' (see
+ * {@link CSVTools#mergeColumns(String, String, String[], char)}).
+ *
+ * The smaller of the two tables is indexed by its (composite) key, the other
+ * one is scanned once and probed against that index, so the join runs in
+ * linear time. The output rows are always in the order of the input table,
+ * several matches for the same input row are in the order of the content
+ * table.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class HashJoin {
+
+    /**
+     * What to do with input rows without matching content row
+     */
+    public enum Type {
+        /** Drop input rows without match */
+        INNER,
+        /** Keep input rows without match, with empty content cells */
+        LEFT
+    }
+
+    /**
+     * What to do if there are several matching content rows
+     */
+    public enum Match {
+        /** Use the first matching content row */
+        FIRST,
+        /** Use the last matching content row */
+        LAST,
+        /** Output one row per matching content row */
+        ALL
+    }
+
+    private final String[] keys;
+
+    private Type type = Type.LEFT;
+
+    private Match match = Match.LAST;
+
+    /**
+     * Creates a new left join, using the last matching content row
+     *
+     * @param keys
+     *            The headers of the columns to use as 'Key'
+     */
+    public HashJoin(String... keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Set the join type (default: {@link Type#LEFT})
+     *
+     * @param type
+     *            The join type
+     * @return This join
+     */
+    public HashJoin setType(Type type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Set how multiple matches are handled (default: {@link Match#LAST})
+     *
+     * @param match
+     *            See above
+     * @return This join
+     */
+    public HashJoin setMatch(Match match) {
+        this.match = match;
+        return this;
+    }
+
+    /**
+     * Join the tables
+     *
+     * @param input
+     *            The input table
+     * @param content
+     *            The table with the additional columns
+     * @return A new table with all columns of the input table followed by
+     *         the non-key columns of the content table
+     */
+    public Table join(Table input, Table content) {
+        int[] inKeyIndex = new int[keys.length];
+        int[] cKeyIndex = new int[keys.length];
+        boolean[] isKey = new boolean[content.getColumnCount()];
+        for (int k = 0; k < keys.length; k++) {
+            inKeyIndex[k] = input.getColumnIndex(keys[k]);
+            cKeyIndex[k] = content.getColumnIndex(keys[k]);
+            if (inKeyIndex[k] == -1)
+                throw new IllegalArgumentException("Key header " + keys[k]
+                        + " not found in input!");
+            if (cKeyIndex[k] == -1)
+                throw new IllegalArgumentException("Key header " + keys[k]
+                        + " not found in content!");
+            isKey[cKeyIndex[k]] = true;
+        }
+
+        // the content columns which are added to the output
+        int nIn = input.getColumnCount();
+        int[] cCols = new int[content.getColumnCount() - keys.length];
+        String[] header = Arrays.copyOf(input.getHeaders(), nIn + cCols.length);
+        int n = 0;
+        for (int c = 0; c < isKey.length; c++) {
+            if (!isKey[c]) {
+                header[nIn + n] = content.getHeader(c);
+                cCols[n++] = c;
+            }
+        }
+
+        Matches m = content.getRowCount() <= input.getRowCount() ? probeInput(
+                input, inKeyIndex, content, cKeyIndex) : probeContent(input,
+                inKeyIndex, content, cKeyIndex);
+
+        Table result = new Table(header);
+        String[] inRow = new String[nIn];
+        String[] outRow = new String[header.length];
+        for (int r = 0; r < input.getRowCount(); r++) {
+            int from = m.start[r];
+            int to = m.start[r + 1];
+            if (from == to) {
+                if (type == Type.INNER)
+                    continue;
+                System.arraycopy(input.getRow(r, inRow), 0, outRow, 0, nIn);
+                Arrays.fill(outRow, nIn, outRow.length, "");
+                result.addRow(outRow);
+                continue;
+            }
+            if (match == Match.FIRST)
+                to = from + 1;
+            else if (match == Match.LAST)
+                from = to - 1;
+            input.getRow(r, inRow);
+            for (int i = from; i < to; i++) {
+                System.arraycopy(inRow, 0, outRow, 0, nIn);
+                for (int c = 0; c < cCols.length; c++)
+                    outRow[nIn + c] = content.get(m.rows[i], cCols[c]);
+                result.addRow(outRow);
+            }
+        }
+        result.encodeColumns();
+        return result;
+    }
+
+    /**
+     * Builds the index over the content table and probes it with each input
+     * row.
+     */
+    private Matches probeInput(Table input, int[] inKeyIndex, Table content,
+            int[] cKeyIndex) {
+        Index index = new Index(content, cKeyIndex);
+        Matches m = new Matches(input.getRowCount());
+        for (int r = 0; r < input.getRowCount(); r++) {
+            m.start[r] = m.size;
+            for (int c = index.first(key(input, r, inKeyIndex)); c >= 0; c = index.next[c])
+                m.add(c);
+        }
+        m.start[input.getRowCount()] = m.size;
+        return m;
+    }
+
+    /**
+     * Builds the index over the input table and probes it with each content
+     * row. The matches are then sorted by input row (stable, so the content
+     * order is kept).
+     */
+    private Matches probeContent(Table input, int[] inKeyIndex,
+            Table content, int[] cKeyIndex) {
+        Index index = new Index(input, inKeyIndex);
+        int nIn = input.getRowCount();
+        int[] inRows = new int[16];
+        int[] cRows = new int[16];
+        int pairs = 0;
+        int[] count = new int[nIn + 1];
+        for (int c = 0; c < content.getRowCount(); c++) {
+            for (int r = index.first(key(content, c, cKeyIndex)); r >= 0; r = index.next[r]) {
+                if (pairs == inRows.length) {
+                    inRows = Arrays.copyOf(inRows, pairs * 2);
+                    cRows = Arrays.copyOf(cRows, pairs * 2);
+                }
+                inRows[pairs] = r;
+                cRows[pairs] = c;
+                pairs++;
+                count[r + 1]++;
+            }
+        }
+
+        // counting sort by input row
+        Matches m = new Matches(nIn);
+        for (int r = 0; r < nIn; r++)
+            count[r + 1] += count[r];
+        System.arraycopy(count, 0, m.start, 0, nIn + 1);
+        m.rows = new int[pairs];
+        m.size = pairs;
+        for (int i = 0; i < pairs; i++)
+            m.rows[count[inRows[i]]++] = cRows[i];
+        return m;
+    }
+
+    private static CompositeKey key(Table t, int row, int[] keyIndex) {
+        String[] values = new String[keyIndex.length];
+        for (int k = 0; k < keyIndex.length; k++)
+            values[k] = t.get(row, keyIndex[k]);
+        return new CompositeKey(values);
+    }
+
+    /**
+     * Maps a key to the chain of rows with this key (in ascending order)
+     */
+    private static class Index {
+
+        private final Map<CompositeKey, Integer> head;
+
+        private final int[] next;
+
+        Index(Table t, int[] keyIndex) {
+            head = new HashMap<CompositeKey, Integer>(
+                    Math.max(16, t.getRowCount() * 4 / 3 + 1));
+            next = new int[t.getRowCount()];
+            // insert backwards, so that the chains are in ascending order
+            for (int r = t.getRowCount() - 1; r >= 0; r--) {
+                Integer h = head.put(key(t, r, keyIndex), r);
+                next[r] = h != null ? h.intValue() : -1;
+            }
+        }
+
+        int first(CompositeKey key) {
+            Integer h = head.get(key);
+            return h != null ? h.intValue() : -1;
+        }
+    }
+
+    /**
+     * The matching content rows for each input row; the matches of input
+     * row r are rows[start[r]] to rows[start[r+1]-1].
+     */
+    private static class Matches {
+
+        private final int[] start;
+
+        private int[] rows = new int[16];
+
+        private int size = 0;
+
+        Matches(int nInput) {
+            start = new int[nInput + 1];
+        }
+
+        void add(int row) {
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, size * 2);
+            rows[size++] = row;
+        }
+    }
+}
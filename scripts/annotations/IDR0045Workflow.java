@@ -21,8 +21,6 @@
 
 package annotations;
 
-import static annotations.CSVTools.*;
-
 /**
  * Generates the filePaths.tsv and annotation.csv from the provided assays.txt file.
  * 
@@ -52,7 +50,9 @@ public class IDR0045Workflow {
         final char TSV = '\t';
         final char CSV = ',';
         
-        String input = readFile(assayFile);
+        // Parse the tsv assays file only once, all further steps
+        // operate on the in-memory table
+        Table annotations = Table.read(assayFile, TSV);
         
         /**
          *  create filePath.tsv
@@ -64,48 +64,49 @@ public class IDR0045Workflow {
          * create annotation.csv
          */
         
-        // Convert the tsv assays file to a csv file
-        String annotationContent = format(input, TSV, CSV);
-        
         // Remove empty columns
-        annotationContent = removeEmptyColumns(annotationContent, CSV);
+        annotations.removeEmptyColumns();
+        
+        // The schema follows all column changes, so it only has to be
+        // fetched once
+        Schema schema = annotations.getSchema();
         
         // Rename "Assays" column to "Dataset Name"
-        int index = getColumnIndex(annotationContent, datasetNameColumn, CSV);
-        annotationContent = renameColumn(annotationContent, index, "Dataset Name", CSV);
+        int index = schema.require(datasetNameColumn);
+        annotations.renameColumn(index, "Dataset Name");
         
         // Merge the file -> image mapping to add the Image Name
-        String fileMapping = readFile(fileMappingFile);
-        annotationContent = mergeColumns(annotationContent, fileMapping, new String[]{"Dataset Name", "Image File"}, CSV);
+        Table fileMapping = Table.read(fileMappingFile, CSV);
+        annotations.mergeColumns(fileMapping, new String[]{"Dataset Name", "Image File"});
         
         // There are files which are just imported as they are, fill these in the "Image Name" column
-        index = getColumnIndex(annotationContent, "Image Name", CSV);
-        int index2 = getColumnIndex(annotationContent, "Image File", CSV);
-        annotationContent = copyContent(annotationContent, index2, index, false, CSV);
+        new RowPipeline()
+            .copyContent("Image File", "Image Name", false)
+            .apply(annotations);
         
         // Move the image name column to the front
-        index = getColumnIndex(annotationContent, "Image Name", CSV);
-        annotationContent = swapColumns(annotationContent, index, 1, CSV);
+        index = schema.require("Image Name");
+        annotations.swapColumns(index, 1);
         
         // Move the dataset name column to the front
-        index = getColumnIndex(annotationContent, "Dataset Name", CSV);
-        annotationContent = swapColumns(annotationContent, index, 0, CSV);
+        index = schema.require("Dataset Name");
+        annotations.swapColumns(index, 0);
         
         // Make sure that there's only one entry per image
-        annotationContent = shrink(annotationContent, new int[] {0,1}, new int[] {14}, CSV);
+        annotations.shrink(new int[] {0,1}, new int[] {14});
         
         // Delete the image file column
-        index = getColumnIndex(annotationContent, "Image File", CSV);
-        annotationContent = removeColumn(annotationContent, index, CSV);
+        index = schema.require("Image File");
+        annotations.removeColumn(index);
         
         // Make sure only ; is used as separator in the Channels column
-        index = getColumnIndex(annotationContent, "Channels", CSV);
-        annotationContent = process(annotationContent, index, CSV, content -> {
-            return content.replace(',', ';');
-        });
+        new RowPipeline()
+            .process("Channels", content -> content.replace(',', ';'))
+            .distinct()
+            .apply(annotations);
         
         // Finally save the annotion.csv file
-        writeFile(annotationFile, annotationContent);
+        annotations.write(annotationFile, CSV);
         
     }
 }
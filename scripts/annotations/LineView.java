@@ -0,0 +1,202 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read-only view on a line of (UTF-8 encoded) bytes, see
+ * {@link MappedLineScanner}. Pure ASCII lines are accessed directly, other
+ * lines are decoded into a String on first access.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class LineView implements CharSequence {
+
+    private ByteBuffer buf;
+
+    private int offset;
+
+    private int length;
+
+    private boolean ascii;
+
+    /** The decoded line (only used if the line isn't pure ASCII) */
+    private String decoded;
+
+    LineView() {
+    }
+
+    LineView(ByteBuffer buf, int offset, int length, boolean ascii) {
+        reset(buf, offset, length, ascii);
+    }
+
+    void reset(ByteBuffer buf, int offset, int length, boolean ascii) {
+        this.buf = buf;
+        this.offset = offset;
+        this.length = length;
+        this.ascii = ascii;
+        this.decoded = null;
+    }
+
+    private String decoded() {
+        if (decoded == null) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++)
+                bytes[i] = buf.get(offset + i);
+            decoded = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return decoded;
+    }
+
+    @Override
+    public int length() {
+        return ascii ? length : decoded().length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (!ascii)
+            return decoded().charAt(index);
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index: " + index
+                    + ", length: " + length);
+        return (char) buf.get(offset + index);
+    }
+
+    /**
+     * @return <code>true</code> if the line is empty
+     */
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (!ascii)
+            return decoded().substring(start, end);
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException("Range: " + start + "-" + end
+                    + ", length: " + length);
+        return new LineView(buf, offset + start, end - start, true);
+    }
+
+    /**
+     * Get the n-th field of the line (without materializing the other
+     * fields)
+     * 
+     * @param n
+     *            The index of the field
+     * @param sep
+     *            The separator character
+     * @return The field or <code>null</code> if the line has less than n+1
+     *         fields
+     */
+    public CharSequence field(int n, char sep) {
+        int len = length();
+        int start = 0;
+        for (int i = 0; i < n; i++) {
+            start = indexOf(sep, start);
+            if (start < 0)
+                return null;
+            start++;
+        }
+        int end = indexOf(sep, start);
+        return subSequence(start, end < 0 ? len : end);
+    }
+
+    /**
+     * @param c
+     *            The character
+     * @param from
+     *            The index to start the search from
+     * @return The index of the first occurrence of c at or after from, or -1
+     */
+    public int indexOf(char c, int from) {
+        int len = length();
+        for (int i = Math.max(0, from); i < len; i++)
+            if (charAt(i) == c)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @param c
+     *            The character
+     * @return The index of the last occurrence of c, or -1
+     */
+    public int lastIndexOf(char c) {
+        for (int i = length() - 1; i >= 0; i--)
+            if (charAt(i) == c)
+                return i;
+        return -1;
+    }
+
+    /**
+     * @param prefix
+     *            The prefix
+     * @return <code>true</code> if the line starts with the prefix
+     */
+    public boolean startsWith(CharSequence prefix) {
+        return regionMatches(0, prefix);
+    }
+
+    /**
+     * @param suffix
+     *            The suffix
+     * @return <code>true</code> if the line ends with the suffix
+     */
+    public boolean endsWith(CharSequence suffix) {
+        return regionMatches(length() - suffix.length(), suffix);
+    }
+
+    /**
+     * @param s
+     *            The characters to compare with
+     * @return <code>true</code> if the line consists of exactly the same
+     *         characters
+     */
+    public boolean contentEquals(CharSequence s) {
+        return length() == s.length() && regionMatches(0, s);
+    }
+
+    private boolean regionMatches(int start, CharSequence s) {
+        if (start < 0 || start + s.length() > length())
+            return false;
+        for (int i = 0; i < s.length(); i++)
+            if (charAt(start + i) != s.charAt(i))
+                return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (!ascii)
+            return decoded();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) buf.get(offset + i);
+        return new String(chars);
+    }
+}
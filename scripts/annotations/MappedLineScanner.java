@@ -0,0 +1,159 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scans a text file line by line by memory mapping it. The lines are not
+ * copied, {@link #line()} only provides a view on the mapped bytes, Strings
+ * are only created if a caller explicitly asks for one (e.g. by
+ * {@link LineView#toString()}). Useful for large file listings, where most of
+ * the lines are only looked at but not kept, e.g.
+ * 
+ * <pre>
+ * MappedLineScanner s = new MappedLineScanner(&quot;filelisting.txt&quot;);
+ * while (s.next()) {
+ *     LineView line = s.line();
+ *     if (line.endsWith(&quot;.tif&quot;))
+ *         files.add(line.toString());
+ * }
+ * s.close();
+ * </pre>
+ * 
+ * Lines are separated by '\n', a trailing '\r' is removed. The file is
+ * expected to be UTF-8 encoded.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class MappedLineScanner implements Closeable {
+
+    /** Max. size of a mapped region */
+    private static final long SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    /** The currently mapped region */
+    private MappedByteBuffer buf;
+
+    /** The file offset of the mapped region */
+    private long bufStart = 0;
+
+    /** The position of the next line within the mapped region */
+    private int pos = 0;
+
+    private final LineView line = new LineView();
+
+    /**
+     * Opens a file
+     * 
+     * @param inFile
+     *            The file to scan
+     * @throws IOException
+     */
+    public MappedLineScanner(String inFile) throws IOException {
+        this.file = new RandomAccessFile(inFile, "r");
+        this.channel = file.getChannel();
+        this.size = channel.size();
+        map(0);
+    }
+
+    /**
+     * Move to the next line
+     * 
+     * @return <code>false</code> if the end of the file is reached
+     * @throws IOException
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            int limit = buf.limit();
+            if (pos >= limit) {
+                if (bufStart + limit >= size)
+                    return false;
+                map(bufStart + limit);
+                continue;
+            }
+
+            int start = pos;
+            int end = start;
+            int bits = 0;
+            while (end < limit) {
+                byte b = buf.get(end);
+                if (b == '\n')
+                    break;
+                bits |= b;
+                end++;
+            }
+
+            if (end == limit && bufStart + limit < size) {
+                // the line continues in the next region
+                if (start == 0)
+                    throw new IOException("Line at offset " + bufStart
+                            + " is too long");
+                map(bufStart + start);
+                continue;
+            }
+
+            pos = end + 1;
+            int length = end - start;
+            if (length > 0 && buf.get(end - 1) == '\r')
+                length--;
+            // a negative value means at least one byte had the highest bit
+            // set, i.e. the line is not pure ASCII
+            line.reset(buf, start, length, bits >= 0);
+            return true;
+        }
+    }
+
+    /**
+     * Get the current line. The view is reused and changes on the next call
+     * of {@link #next()}.
+     * 
+     * @return See above
+     */
+    public LineView line() {
+        return line;
+    }
+
+    private void map(long offset) throws IOException {
+        bufStart = offset;
+        buf = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                Math.min(SEGMENT_SIZE, size - offset));
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        buf = null;
+        channel.close();
+        file.close();
+    }
+}
@@ -21,18 +21,26 @@
 package annotations;
 
 import static annotations.BasicCSVUtils.join;
-import static annotations.BasicCSVUtils.split;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import annotations.Aggregator.Accumulator;
 
 /**
  * Merges several CSV files into a single CSV file. First line of the CSV files
@@ -42,6 +50,18 @@ import java.util.List;
  * Run from command line, e.g. with arguments
  * input1.csv input2.csv input3.csv output.csv
  * 
+ * The separator of each input file is detected from its header line (tab,
+ * comma or semicolon), unless it is specified with -sep. The output is
+ * written with the separator specified with -outsep (default: the -sep
+ * separator, or comma), so TSV files can be merged directly without
+ * converting them first.
+ * 
+ * With -key the files are not simply concatenated, but merged by the given
+ * key columns: the output is sorted by the key columns and all rows with the
+ * same key are combined into one row (see -conflict), so that several
+ * annotation files describing the same images don't result in duplicate
+ * rows.
+ * 
  * 
  * Can be used to merge the different annotation.csv of the single hpa_runs together
  * into one master annotation.csv which can used to annotate the project.
@@ -51,20 +71,35 @@ import java.util.List;
  */
 public class Merge {
 
+    /** Separator value meaning 'detect the separator of each file' */
+    static final char DETECT = 0;
+
     public static void main(String[] args) throws Exception {
 
         if (args.length < 3) {
             help();
         }
 
-        char sep = ',';
+        char sep = DETECT;
+        char outSep = 0;
+        String[] keys = null;
+        boolean sorted = false;
+        Conflict conflict = Conflict.LAST;
         List<String> files = new ArrayList<String>();
         String outFile = args[args.length - 1];
         for (int i = 0; i < args.length; i++) {
             if (args[i].equals("-h") || args[i].equals("--help"))
                 help();
             else if (args[i].equals("-sep"))
-                sep = args[++i].charAt(0);
+                sep = separator(args[++i]);
+            else if (args[i].equals("-outsep"))
+                outSep = separator(args[++i]);
+            else if (args[i].equals("-key"))
+                keys = args[++i].split(",");
+            else if (args[i].equals("-sorted"))
+                sorted = true;
+            else if (args[i].equals("-conflict"))
+                conflict = Conflict.valueOf(args[++i].toUpperCase());
             else if (i < args.length - 1) {
                 File f = new File(args[i]);
                 if (f.exists())
@@ -77,89 +112,561 @@ public class Merge {
         if (files.size() > 1) {
             String[] input = new String[files.size()];
             input = files.toArray(input);
-            merge(outFile, input);
+            if (outSep == 0)
+                outSep = sep != DETECT ? sep : ',';
+            if (keys != null)
+                merge(outFile, sep, outSep, keys, sorted, conflict, input);
+            else
+                merge(outFile, sep, outSep, input);
         }
     }
 
+    /**
+     * Get the separator character from a command line argument, "\t" or
+     * "tab" can be used for tab.
+     */
+    private static char separator(String arg) {
+        if (arg.equals("\\t") || arg.equalsIgnoreCase("tab"))
+            return '\t';
+        return arg.charAt(0);
+    }
+
     private static void help() {
         System.out
-                .println("Usage: java Merge [-sep \",\"] input1.csv input2.csv ... output.csv\n"
-                        + "-sep Separator character (optional, default: , )");
+                .println("Usage: java Merge [-sep \",\"] [-outsep \",\"] [-key \"Plate,Well\" [-sorted] [-conflict last]] input1.csv input2.csv ... output.csv\n"
+                        + "-sep Separator character of the input files (optional, default: detected per file)\n"
+                        + "-outsep Separator character of the output file (optional, default: -sep or , )\n"
+                        + "-key Merge rows with the same values in these columns (optional)\n"
+                        + "-sorted The input files are already sorted by the key columns (optional)\n"
+                        + "-conflict first, last, concat or fail: How to combine different values\n"
+                        + "          of rows with the same key (optional, default: last)");
         System.exit(1);
     }
 
-    private static void merge(String outFile, String... files) throws Exception {
-        BufferedWriter out = new BufferedWriter(new FileWriter(outFile));
+    static void merge(String outFile, String... files) throws Exception {
+        merge(outFile, ',', ',', files);
+    }
 
-        // Parse first line of each file to get the headers
-        HashSet<String> tmp = new LinkedHashSet<String>();
-        for (String file : files) {
-            BufferedReader in = new BufferedReader(new FileReader(file));
-            String line = in.readLine();
-            String[] split = split(line);
-            for (String s : split) {
-                if (s.length() > 0 && !s.startsWith("#"))
-                    tmp.add(s);
-            }
-            in.close();
+    /**
+     * Merges several CSV files
+     * 
+     * @param outFile
+     *            The output file
+     * @param sep
+     *            The separator of the input files, {@link #DETECT} to
+     *            detect the separator of each file from its header line
+     * @param outSep
+     *            The separator of the output file
+     * @param files
+     *            The input files
+     * @throws Exception
+     */
+    static void merge(String outFile, char sep, char outSep, String... files)
+            throws Exception {
+        // Only read the header lines first, the headers of all files are
+        // needed before any file can be converted
+        String[][] fileHeaders = new String[files.length][];
+        final CSVFormat[] formats = new CSVFormat[files.length];
+        for (int f = 0; f < files.length; f++) {
+            String line = headerLine(files[f]);
+            formats[f] = CSVFormat.of(sep != DETECT ? sep : detect(line,
+                    files[f]));
+            fileHeaders[f] = formats[f].parser().split(line);
         }
 
         // The headers
-        String[] headers = new String[tmp.size()];
+        final String[] headers = union(fileHeaders);
         // The headers mapped to their position (column index) in the output
         // file
-        HashMap<String, Integer> pos = new HashMap<String, Integer>();
-        int i = 0;
-        for (String header : tmp) {
-            headers[i] = header;
-            pos.put(header, new Integer(i));
-            i++;
-        }
-
-        // write header line
-        out.write(join(headers) + "\n");
-
-        // merge the input csv files together
-        int c = 0;
-        for (String file : files) {
-            BufferedReader in = new BufferedReader(new FileReader(file));
-            String line = in.readLine();
-            c++;
-            // the headers of this particular input csv
-            String[] thisHeaders = split(line);
-
-            while ((line = in.readLine()) != null) {
-                c++;
-                String[] parts = split(line);
-
-                // the assembled output line
-                String[] outline = new String[headers.length];
-
-                // iterate over each column
-                for (int col = 0; col < parts.length; col++) {
-                    try {
-                        if (parts[col].startsWith("#"))
-                            continue;
+        Map<String, Integer> pos = positions(headers);
+        // for each column of a file the column index in the output is
+        // looked up only once
+        final int[][] remaps = new int[files.length][];
+        for (int f = 0; f < files.length; f++)
+            remaps[f] = remap(fileHeaders[f], pos);
 
-                        if (col >= thisHeaders.length)
-                            continue;
+        // Read and convert the files concurrently, but only a few files at a
+        // time: the chunk of a file is written and released as soon as the
+        // chunks of the previous files are written, so the memory needed
+        // depends on the size of the window, not on the total size of the
+        // files
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int window = Math.max(2, pool.getParallelism());
+        List<ForkJoinTask<String>> chunks = new ArrayList<ForkJoinTask<String>>();
+        for (int f = 0; f < files.length && f < window; f++)
+            chunks.add(convert(pool, files[f], formats[f], remaps[f],
+                    headers.length, outSep));
 
-                        // get the correct column index for the output
-                        Integer outIndex = pos.get(thisHeaders[col]);
-                        if (outIndex != null)
-                            outline[outIndex.intValue()] = parts[col];
-                    } catch (Exception e) {
-                        System.err.println("File: "+file+" line: "+c+" column: "+col);
-                        e.printStackTrace();
-                    }
+        // write header line and the rows in the order of the input files
+        BufferedWriter out = new BufferedWriter(new FileWriter(outFile));
+        try {
+            out.write(join(headers, outSep) + "\n");
+            for (int f = 0; f < files.length; f++) {
+                out.write(chunks.get(f).get());
+                chunks.set(f, null);
+                int next = f + window;
+                if (next < files.length)
+                    chunks.add(convert(pool, files[next], formats[next],
+                            remaps[next], headers.length, outSep));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads and converts a file in the pool, see
+     * {@link #convert(String, CSVFormat, int[], int, char)}
+     */
+    private static ForkJoinTask<String> convert(ForkJoinPool pool,
+            final String file, final CSVFormat format, final int[] remap,
+            final int nOut, final char outSep) {
+        return pool.submit(() -> convert(CSVTools.readFile(file), format,
+                remap, nOut, outSep));
+    }
+
+    /**
+     * Merges several CSV files by key: The rows of all files are merged in
+     * the order of their key columns (k-way merge), rows with the same key
+     * (from the same or from different files) are combined into a single row
+     * according to the conflict policy. Files which are not already sorted
+     * by the key columns are sorted first (see {@link ExternalSorter}), so
+     * the memory needed is bounded by the number of files, not by the number
+     * of rows.
+     * 
+     * @param outFile
+     *            The output file
+     * @param sep
+     *            The separator of the input files, {@link #DETECT} to
+     *            detect the separator of each file from its header line
+     * @param outSep
+     *            The separator of the output file
+     * @param keys
+     *            The headers of the key columns
+     * @param sorted
+     *            Pass <code>true</code> if the files are already sorted by
+     *            the key columns (the order is checked while merging)
+     * @param conflict
+     *            What to do with different values in rows with the same key
+     * @param files
+     *            The input files
+     * @throws Exception
+     */
+    static void merge(String outFile, char sep, char outSep, String[] keys,
+            boolean sorted, Conflict conflict, String... files)
+            throws Exception {
+        // Only read the header lines
+        CSVFormat[] formats = new CSVFormat[files.length];
+        String[][] fileHeaders = new String[files.length][];
+        for (int f = 0; f < files.length; f++) {
+            String line = firstLine(files[f]);
+            formats[f] = CSVFormat.of(sep != DETECT ? sep : detect(line,
+                    files[f]));
+            fileHeaders[f] = formats[f].parser().split(line);
+        }
+
+        String[] headers = union(fileHeaders);
+        Map<String, Integer> pos = positions(headers);
+        final int[] keyIndex = new int[keys.length];
+        boolean[] isKey = new boolean[headers.length];
+        for (int k = 0; k < keys.length; k++) {
+            Integer index = pos.get(keys[k].trim());
+            if (index == null)
+                throw new IllegalArgumentException("Key header " + keys[k]
+                        + " not found!");
+            keyIndex[k] = index;
+            isKey[index] = true;
+        }
+        Comparator<String[]> order = (row1, row2) -> {
+            for (int k : keyIndex) {
+                int cmp = row1[k].compareTo(row2[k]);
+                if (cmp != 0)
+                    return cmp;
+            }
+            return 0;
+        };
+
+        // the memory budget of the sorter is shared by all files
+        ExternalSorter sorter = new ExternalSorter()
+                .setMemoryBudget(Math.max(1 << 20,
+                        ExternalSorter.DEFAULT_MEMORY_BUDGET / files.length));
+        PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(Math.max(1,
+                files.length), (c1, c2) -> {
+            int cmp = order.compare(c1.row, c2.row);
+            return cmp != 0 ? cmp : Integer.compare(c1.input, c2.input);
+        });
+        List<RowSource> sources = new ArrayList<RowSource>();
+        CSVRowWriter out = null;
+        try {
+            for (int f = 0; f < files.length; f++) {
+                RowSource in = new Remapped(new CSVRowReader(files[f],
+                        formats[f].getDelimiter()), remap(fileHeaders[f], pos),
+                        headers);
+                sources.add(in);
+                if (!sorted) {
+                    in = sorter.sort(in, keyIndex);
+                    sources.set(f, in);
                 }
-                out.write(join(outline) + "\n");
+                Cursor c = new Cursor(f, files[f], in, sorted ? order : null);
+                if (c.advance())
+                    queue.add(c);
             }
-            c = 0;
-            in.close();
+
+            out = new CSVRowWriter(outFile, outSep);
+            out.writeHeaders(headers);
+            Accumulator[] acc = new Accumulator[headers.length];
+            while (!queue.isEmpty()) {
+                Cursor c = queue.poll();
+                String[] first = c.row;
+                for (int col = 0; col < headers.length; col++)
+                    acc[col] = isKey[col] ? null : conflict.aggregator
+                            .newAccumulator();
+                // all rows with the same key are at the head of the queue
+                do {
+                    for (int col = 0; col < headers.length; col++) {
+                        if (acc[col] == null)
+                            continue;
+                        try {
+                            acc[col].add(c.row[col]);
+                        } catch (IllegalStateException e) {
+                            throw new IllegalStateException(e.getMessage()
+                                    + " in column " + headers[col]
+                                    + " for key " + key(first, keyIndex)
+                                    + " (" + c.file + ")");
+                        }
+                    }
+                    if (c.advance())
+                        queue.add(c);
+                    c = queue.peek();
+                    if (c != null && order.compare(c.row, first) == 0)
+                        queue.poll();
+                    else
+                        c = null;
+                } while (c != null);
+
+                String[] row = new String[headers.length];
+                for (int col = 0; col < headers.length; col++)
+                    row[col] = acc[col] == null ? first[col] : acc[col]
+                            .getResult();
+                out.writeRow(row);
+            }
+        } finally {
+            for (RowSource in : sources)
+                in.close();
+            if (out != null)
+                out.close();
+        }
+    }
+
+    /**
+     * @return The first line of the file (empty if the file is empty)
+     */
+    private static String headerLine(String file) throws IOException {
+        BufferedReader r = new BufferedReader(new FileReader(file));
+        try {
+            String line = r.readLine();
+            return line != null ? line : "";
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Reads the first non-empty line of a file
+     */
+    private static String firstLine(String file) throws IOException {
+        BufferedReader r = new BufferedReader(new FileReader(file));
+        try {
+            String line = null;
+            while ((line = r.readLine()) != null) {
+                if (!line.trim().isEmpty())
+                    return line;
+            }
+            throw new IllegalArgumentException("No header line found in "
+                    + file + "!");
+        } finally {
+            r.close();
+        }
+    }
+
+    private static String key(String[] row, int[] keyIndex) {
+        String[] key = new String[keyIndex.length];
+        for (int k = 0; k < keyIndex.length; k++)
+            key[k] = row[keyIndex[k]];
+        return Arrays.toString(key);
+    }
+
+    /**
+     * @param fileHeaders
+     *            The headers of each file
+     * @return All (distinct) headers, in the order of their first occurrence,
+     *         without empty headers and headers starting with '#'
+     */
+    private static String[] union(String[][] fileHeaders) {
+        Set<String> tmp = new LinkedHashSet<String>();
+        for (String[] h : fileHeaders) {
+            for (String s : h) {
+                if (s.length() > 0 && !s.startsWith("#"))
+                    tmp.add(s);
+            }
+        }
+        return tmp.toArray(new String[tmp.size()]);
+    }
+
+    private static Map<String, Integer> positions(String[] headers) {
+        Map<String, Integer> pos = new HashMap<String, Integer>();
+        for (int i = 0; i < headers.length; i++)
+            pos.put(headers[i], i);
+        return pos;
+    }
+
+    /**
+     * @param fileHeaders
+     *            The headers of a file
+     * @param pos
+     *            The output column index of each header
+     * @return The output column index for each column of the file, -1 if the
+     *         column is dropped
+     */
+    private static int[] remap(String[] fileHeaders, Map<String, Integer> pos) {
+        int[] remap = new int[fileHeaders.length];
+        for (int col = 0; col < remap.length; col++) {
+            Integer outIndex = pos.get(fileHeaders[col]);
+            remap[col] = outIndex != null ? outIndex.intValue() : -1;
+        }
+        return remap;
+    }
+
+    /**
+     * Rearranges the rows of a CSV file to the output columns
+     * 
+     * @param data
+     *            The content of the file (including the header line)
+     * @param format
+     *            The format of the file
+     * @param remap
+     *            The output column index for each column of the file, -1 if
+     *            the column is dropped
+     * @param nOut
+     *            The number of output columns
+     * @param outSep
+     *            The separator of the output
+     * @return The output rows
+     */
+    private static String convert(String data, CSVFormat format,
+            int[] remap, int nOut, char outSep) {
+        CSVParser parser = format.newParser();
+        FieldBuffer parts = new FieldBuffer();
+        StringBuilder sb = new StringBuilder(data.length() + data.length() / 4);
+        // the assembled output line, i.e. the index of the cell of
+        // the input line for each output column
+        int[] outline = new int[nOut];
+        int start = data.indexOf('\n') + 1;
+        while (start > 0 && start < data.length()) {
+            int end = data.indexOf('\n', start);
+            parser.split(data.substring(start, end), parts);
+            start = end + 1;
+
+            Arrays.fill(outline, -1);
+            int n = Math.min(parts.size(), remap.length);
+            for (int col = 0; col < n; col++) {
+                if (remap[col] >= 0
+                        && (parts.isEmpty(col) || parts.charAt(col, 0) != '#'))
+                    outline[remap[col]] = col;
+            }
+
+            // copy the cells directly from the input line
+            for (int col = 0; col < nOut; col++) {
+                if (outline[col] >= 0)
+                    parts.appendTo(outline[col], sb, outSep);
+                if (col < nOut - 1)
+                    sb.append(outSep);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Guesses the separator of a file from its header line: The most
+     * frequent of tab, comma and semicolon (outside of quotes). If there is
+     * none of them (single column), tab for .tsv/.tab files, otherwise
+     * comma.
+     * 
+     * @param header
+     *            The header line
+     * @param file
+     *            The file name
+     * @return See above
+     */
+    static char detect(String header, String file) {
+        char[] candidates = { ',', '\t', ';' };
+        int[] counts = new int[candidates.length];
+        boolean quoted = false;
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (c == '"')
+                quoted = !quoted;
+            else if (!quoted)
+                for (int j = 0; j < candidates.length; j++)
+                    if (c == candidates[j])
+                        counts[j]++;
+        }
+        int best = 0;
+        for (int j = 1; j < candidates.length; j++)
+            if (counts[j] > counts[best])
+                best = j;
+        if (counts[best] > 0)
+            return candidates[best];
+        String name = file.toLowerCase();
+        return name.endsWith(".tsv") || name.endsWith(".tab") ? '\t' : ',';
+    }
+
+    /**
+     * How the cells of rows with the same key are combined, see
+     * {@link Merge#merge(String, char, char, String[], boolean, Conflict, String...)}
+     */
+    enum Conflict {
+        /** Use the first non-empty value (in the order of the files) */
+        FIRST(() -> new Accumulator() {
+            String result = "";
+
+            @Override
+            public void add(String value) {
+                if (result.isEmpty() && value != null)
+                    result = value;
+            }
+
+            @Override
+            public String getResult() {
+                return result;
+            }
+        }),
+        /** Use the last non-empty value (in the order of the files) */
+        LAST(() -> new Accumulator() {
+            String result = "";
+
+            @Override
+            public void add(String value) {
+                if (value != null && !value.isEmpty())
+                    result = value;
+            }
+
+            @Override
+            public String getResult() {
+                return result;
+            }
+        }),
+        /** Concatenate the distinct non-empty values, separated by ';' */
+        CONCAT(Aggregators.distinctConcat(";")),
+        /** Throw an IllegalStateException for different non-empty values */
+        FAIL(() -> new Accumulator() {
+            String result = "";
+
+            @Override
+            public void add(String value) {
+                if (value == null || value.isEmpty() || value.equals(result))
+                    return;
+                if (!result.isEmpty())
+                    throw new IllegalStateException("Conflicting values '"
+                            + result + "' and '" + value + "'");
+                result = value;
+            }
+
+            @Override
+            public String getResult() {
+                return result;
+            }
+        });
+
+        private final Aggregator aggregator;
+
+        private Conflict(Aggregator aggregator) {
+            this.aggregator = aggregator;
+        }
+    }
+
+    /**
+     * Rearranges the rows of a source to the output columns (missing cells
+     * and cells starting with '#' are empty)
+     */
+    private static class Remapped implements RowSource {
+
+        private final RowSource in;
+
+        private final int[] remap;
+
+        private final String[] headers;
+
+        Remapped(RowSource in, int[] remap, String[] headers) {
+            this.in = in;
+            this.remap = remap;
+            this.headers = headers;
+        }
+
+        @Override
+        public String[] getHeaders() {
+            return headers.clone();
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            String[] row = in.next();
+            if (row == null)
+                return null;
+            String[] result = new String[headers.length];
+            Arrays.fill(result, "");
+            int n = Math.min(row.length, remap.length);
+            for (int col = 0; col < n; col++) {
+                if (remap[col] >= 0 && !row[col].startsWith("#"))
+                    result[remap[col]] = row[col];
+            }
+            return result;
         }
 
-        out.close();
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
     }
 
+    /**
+     * The current row of one of the files of a k-way merge
+     */
+    private static class Cursor {
+
+        private final int input;
+
+        private final String file;
+
+        private final RowSource in;
+
+        /** If not null, the order of the rows is checked */
+        private final Comparator<String[]> order;
+
+        private String[] row;
+
+        Cursor(int input, String file, RowSource in, Comparator<String[]> order) {
+            this.input = input;
+            this.file = file;
+            this.in = in;
+            this.order = order;
+        }
+
+        /**
+         * Move to the next row
+         * 
+         * @return <code>false</code> if there are no more rows
+         * @throws IOException
+         */
+        boolean advance() throws IOException {
+            String[] previous = row;
+            row = in.next();
+            if (row != null && order != null && previous != null
+                    && order.compare(previous, row) > 0)
+                throw new IllegalStateException("File " + file
+                        + " is not sorted by the key columns!");
+            return row != null;
+        }
+    }
 }
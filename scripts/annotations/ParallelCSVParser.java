@@ -0,0 +1,386 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Parses large CSV/TSV data on several threads. The input is cut into
+ * chunks of lines, the chunks are parsed on a {@link ForkJoinPool} and the
+ * records are reassembled in their original order.
+ * 
+ * Like {@link CSVRowReader} the input is line based, i.e. each line is a
+ * record (a quote can't span several lines, so a line with an unbalanced
+ * quote only affects itself). Lines end with '\n', '\r' or "\r\n" (as for
+ * {@link BufferedReader#readLine()}), empty lines are ignored.
+ * 
+ * The records of each chunk can be collected into a separate container
+ * (e.g. the columns of a table), see
+ * {@link #parseBody(CharSequence, Supplier, BiConsumer)}, so that the
+ * records don't have to be kept as a list of rows.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class ParallelCSVParser {
+
+    /** Default (approximate) size of a chunk in characters */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final CSVFormat format;
+
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+    /**
+     * Creates a new parser
+     * 
+     * @param format
+     *            The CSV format
+     */
+    public ParallelCSVParser(CSVFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Set the pool to run the parsing tasks on (default: the common pool)
+     * 
+     * @param pool
+     *            The pool
+     * @return This parser
+     */
+    public ParallelCSVParser setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Set the approximate size of a chunk (default:
+     * {@link #DEFAULT_CHUNK_SIZE})
+     * 
+     * @param chunkSize
+     *            The number of characters
+     * @return This parser
+     */
+    public ParallelCSVParser setChunkSize(int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("Invalid chunk size "
+                    + chunkSize);
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Parses all records
+     * 
+     * @param input
+     *            The CSV data
+     * @return The records, in the order of the input (including the header
+     *         line)
+     */
+    public List<String[]> parse(CharSequence input) {
+        List<String[]> result = new ArrayList<String[]>();
+        String[] header = parseHeader(input);
+        if (header == null)
+            return result;
+        result.add(header);
+        for (List<String[]> chunk : parseBody(input,
+                ArrayList<String[]>::new, List::add))
+            result.addAll(chunk);
+        return result;
+    }
+
+    /**
+     * Parses the header line (the first non-empty line)
+     * 
+     * @param input
+     *            The CSV data
+     * @return The headers or <code>null</code> if there are no lines
+     */
+    public String[] parseHeader(CharSequence input) {
+        String[][] header = new String[1][];
+        forEachRecord(input, 0, input.length(), record -> {
+            header[0] = format.parser().split(record);
+        }, 1);
+        return header[0];
+    }
+
+    /**
+     * Parses the records after the header line. The records of each chunk
+     * are added to a new container.
+     * 
+     * @param input
+     *            The CSV data
+     * @param container
+     *            Creates the container of a chunk
+     * @param add
+     *            Adds a record to a container
+     * @return The containers, in the order of the input
+     */
+    public <T> List<T> parseBody(CharSequence input, Supplier<T> container,
+            BiConsumer<T, String[]> add) {
+        int bodyStart = forEachRecord(input, 0, input.length(), record -> {
+        }, 1);
+        return run(input, bodyStart, (in, start, end) -> {
+            T result = container.get();
+            CSVParser parser = format.parser();
+            forEachRecord(in, start, end, record -> add.accept(result,
+                    parser.split(record)));
+            return result;
+        });
+    }
+
+    /**
+     * Parses the remaining lines of a reader (e.g. after the header line
+     * has been read). The lines are read in chunks, which are parsed while
+     * the next chunks are read; only a few chunks are read ahead, so the
+     * whole input is never held in memory. The records of each chunk are
+     * added to a new container.
+     * 
+     * @param in
+     *            The reader (not closed)
+     * @param container
+     *            Creates the container of a chunk
+     * @param add
+     *            Adds a record to a container
+     * @return The containers, in the order of the input
+     * @throws IOException
+     */
+    public <T> List<T> parseBody(BufferedReader in, Supplier<T> container,
+            BiConsumer<T, String[]> add) throws IOException {
+        int window = Math.max(2, pool.getParallelism() * 2);
+        List<T> result = new ArrayList<T>();
+        Deque<ForkJoinTask<T>> tasks = new ArrayDeque<ForkJoinTask<T>>();
+        List<String> lines = new ArrayList<String>();
+        int size = 0;
+        String line = null;
+        do {
+            line = in.readLine();
+            if (line != null && !line.trim().isEmpty()) {
+                lines.add(line);
+                size += line.length() + 1;
+            }
+            if (size >= chunkSize || (line == null && !lines.isEmpty())) {
+                final List<String> chunk = lines;
+                tasks.add(pool.submit(() -> {
+                    T c = container.get();
+                    CSVParser parser = format.parser();
+                    for (String l : chunk)
+                        add.accept(c, parser.split(l));
+                    return c;
+                }));
+                lines = new ArrayList<String>();
+                size = 0;
+                if (tasks.size() >= window)
+                    result.add(join(tasks.poll()));
+            }
+        } while (line != null);
+        while (!tasks.isEmpty())
+            result.add(join(tasks.poll()));
+        return result;
+    }
+
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Parses the records and writes them in another format. All records get
+     * the same amount of cells as the header line, see
+     * {@link CSVTools#format(String, char, char)}.
+     * 
+     * @param input
+     *            The CSV data
+     * @param to
+     *            The output format
+     * @return The reformatted CSV data
+     */
+    public String reformat(CharSequence input, CSVFormat to) {
+        // the header determines the amount of columns
+        String[] headers = parseHeader(input);
+        if (headers == null)
+            return "";
+        final int nCols = headers.length;
+        List<StringBuilder> chunks = parseBody(input, StringBuilder::new, (
+                output, parts) -> {
+            if (parts.length != nCols)
+                parts = Arrays.copyOf(parts, nCols);
+            output.append(to.join(parts)).append('\n');
+        });
+
+        String header = to.join(headers) + "\n";
+        int length = header.length();
+        for (StringBuilder chunk : chunks)
+            length += chunk.length();
+        StringBuilder output = new StringBuilder(length);
+        output.append(header);
+        for (StringBuilder chunk : chunks)
+            output.append(chunk);
+        return output.toString();
+    }
+
+    /**
+     * Cuts the input into chunks and handles them in parallel
+     */
+    private <T> List<T> run(CharSequence input, int start,
+            ChunkHandler<T> handler) {
+        int[] bounds = boundaries(input, start);
+        if (bounds.length == 2) {
+            List<T> result = new ArrayList<T>(1);
+            result.add(handler.handle(input, bounds[0], bounds[1]));
+            return result;
+        }
+        return pool.invoke(new ChunkTask<T>(input, bounds, 0,
+                bounds.length - 1, handler));
+    }
+
+    /**
+     * Determines the chunk boundaries; every boundary is the start of a
+     * line.
+     * 
+     * @return The start of each chunk, followed by the end of the input
+     */
+    private int[] boundaries(CharSequence input, int start) {
+        int[] bounds = new int[16];
+        int n = 0;
+        bounds[n++] = start;
+        int length = input.length();
+        for (int i = start + chunkSize; i < length; i++) {
+            if (input.charAt(i) == '\n') {
+                if (n == bounds.length)
+                    bounds = Arrays.copyOf(bounds, n * 2);
+                bounds[n++] = i + 1;
+                i += chunkSize;
+            }
+        }
+        if (n == bounds.length)
+            bounds = Arrays.copyOf(bounds, n + 1);
+        bounds[n++] = length;
+        return Arrays.copyOf(bounds, n);
+    }
+
+    private int forEachRecord(CharSequence input, int start, int end,
+            RecordHandler handler) {
+        return forEachRecord(input, start, end, handler, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Passes each (non-empty) line within start and end to the handler
+     * 
+     * @return The position after the last handled line
+     */
+    private int forEachRecord(CharSequence input, int start, int end,
+            RecordHandler handler, int max) {
+        int recordStart = start;
+        int n = 0;
+        for (int i = start; i <= end && n < max; i++) {
+            char c = i < end ? input.charAt(i) : '\n';
+            if (c == '\n' || c == '\r') {
+                String record = input.subSequence(recordStart, i).toString();
+                if (c == '\r' && i + 1 < end && input.charAt(i + 1) == '\n')
+                    i++;
+                recordStart = i + 1;
+                if (!record.trim().isEmpty()) {
+                    handler.handle(record);
+                    n++;
+                }
+            }
+        }
+        return Math.min(recordStart, end);
+    }
+
+    private interface RecordHandler {
+        void handle(String record);
+    }
+
+    private interface ChunkHandler<T> {
+        T handle(CharSequence input, int start, int end);
+    }
+
+    /**
+     * Handles the chunks from index 'from' (inclusive) to 'to' (exclusive),
+     * splitting the range in half until only one chunk is left.
+     */
+    private static class ChunkTask<T> extends RecursiveTask<List<T>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final CharSequence input;
+
+        private final int[] bounds;
+
+        private final int from;
+
+        private final int to;
+
+        private final ChunkHandler<T> handler;
+
+        ChunkTask(CharSequence input, int[] bounds, int from, int to,
+                ChunkHandler<T> handler) {
+            this.input = input;
+            this.bounds = bounds;
+            this.from = from;
+            this.to = to;
+            this.handler = handler;
+        }
+
+        @Override
+        protected List<T> compute() {
+            if (to - from == 1) {
+                List<T> result = new ArrayList<T>(1);
+                result.add(handler.handle(input, bounds[from], bounds[to]));
+                return result;
+            }
+            int mid = (from + to) >>> 1;
+            ChunkTask<T> left = new ChunkTask<T>(input, bounds, from, mid,
+                    handler);
+            ChunkTask<T> right = new ChunkTask<T>(input, bounds, mid, to,
+                    handler);
+            left.fork();
+            List<T> result = new ArrayList<T>(right.compute());
+            result.addAll(0, left.join());
+            return result;
+        }
+    }
+}
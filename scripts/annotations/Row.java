@@ -0,0 +1,118 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+/**
+ * A row which is passed through a {@link RowPipeline}. The cells can be
+ * accessed by column index or by header name; names are resolved by a hash
+ * lookup in the {@link Schema}.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public final class Row {
+
+    private final Schema schema;
+
+    private String[] cells;
+
+    Row(Schema schema) {
+        this.schema = schema;
+    }
+
+    /**
+     * Sets the cells this row currently gives access to
+     */
+    void reset(String[] cells) {
+        this.cells = cells;
+    }
+
+    /**
+     * @return The schema
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return The number of cells
+     */
+    public int size() {
+        return cells.length;
+    }
+
+    /**
+     * Get the content of a cell
+     *
+     * @param col
+     *            The column index
+     * @return See above; an empty String if the row is shorter
+     */
+    public String get(int col) {
+        return col < cells.length && cells[col] != null ? cells[col] : "";
+    }
+
+    /**
+     * Get the content of a cell
+     *
+     * @param column
+     *            The header of the column
+     * @return See above
+     * @throws IllegalArgumentException
+     *             If there is no such column
+     */
+    public String get(String column) {
+        return get(schema.require(column));
+    }
+
+    /**
+     * Set the content of a cell
+     *
+     * @param col
+     *            The column index
+     * @param value
+     *            The new content
+     */
+    public void set(int col, String value) {
+        cells[col] = value == null ? "" : value;
+    }
+
+    /**
+     * Set the content of a cell
+     *
+     * @param column
+     *            The header of the column
+     * @param value
+     *            The new content
+     * @throws IllegalArgumentException
+     *             If there is no such column
+     */
+    public void set(String column, String value) {
+        set(schema.require(column), value);
+    }
+
+    @Override
+    public String toString() {
+        return BasicCSVUtils.join(cells, ',');
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A chain of row-level operations (processors and filters) which is applied
+ * in a single pass. Each row runs through all stages in the order they were
+ * added; as soon as a filter drops a row, the remaining stages are skipped
+ * for it. E.g.
+ *
+ * <pre>
+ * new RowPipeline()
+ *     .copyContent("Image File", "Image Name", false)
+ *     .process("Channels", c -> c.replace(',', ';'))
+ *     .removeIf(row -> row.get("Dataset Name").isEmpty())
+ *     .distinct()
+ *     .apply(table);
+ * </pre>
+ *
+ * Columns are addressed by header name and resolved per row, so stages
+ * only depend on the names, not on the column order.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class RowPipeline {
+
+    /** The stages; a stage returns false if the row has to be dropped */
+    private final List<RowPredicate> stages = new ArrayList<RowPredicate>();
+
+    private boolean distinct = false;
+
+    /**
+     * Add a stage which modifies the row
+     *
+     * @param processor
+     *            The processor
+     * @return This pipeline
+     */
+    public RowPipeline process(final RowProcessor processor) {
+        stages.add(row -> {
+            processor.process(row);
+            return true;
+        });
+        return this;
+    }
+
+    /**
+     * Add a stage which modifies the content of one column
+     *
+     * @param column
+     *            The header of the column
+     * @param processor
+     *            The processor
+     * @return This pipeline
+     */
+    public RowPipeline process(final String column, final Processor processor) {
+        return process(row -> {
+            int col = row.getSchema().require(column);
+            row.set(col, processor.process(row.get(col)));
+        });
+    }
+
+    /**
+     * Add a stage which copies the content of one column to another, see
+     * {@link Table#copyContent(int, int, boolean)}
+     *
+     * @param fromColumn
+     *            The header of the source column
+     * @param toColumn
+     *            The header of the target column
+     * @param overwrite
+     *            Specify <code>true</code> if the content of the target cell
+     *            should be overwritten. Otherwise only empty cells will be
+     *            affected.
+     * @return This pipeline
+     */
+    public RowPipeline copyContent(final String fromColumn,
+            final String toColumn, final boolean overwrite) {
+        return process(row -> {
+            if (overwrite || row.get(toColumn).isEmpty())
+                row.set(toColumn, row.get(fromColumn));
+        });
+    }
+
+    /**
+     * Add a stage which only keeps the rows matching the predicate
+     *
+     * @param predicate
+     *            The predicate
+     * @return This pipeline
+     */
+    public RowPipeline keepIf(RowPredicate predicate) {
+        stages.add(predicate);
+        return this;
+    }
+
+    /**
+     * Add a stage which drops the rows matching the predicate
+     *
+     * @param predicate
+     *            The predicate
+     * @return This pipeline
+     */
+    public RowPipeline removeIf(final RowPredicate predicate) {
+        stages.add(row -> !predicate.test(row));
+        return this;
+    }
+
+    /**
+     * Add a stage which drops the rows which cells of a specific column match
+     * a filter, see {@link Table#filter(int, Filter)}
+     *
+     * @param column
+     *            The header of the column
+     * @param filter
+     *            The filter
+     * @return This pipeline
+     */
+    public RowPipeline filter(final String column, final Filter filter) {
+        return removeIf(row -> filter.filter(row.get(column)));
+    }
+
+    /**
+     * Drop rows which (after all stages) are an exact copy of a previous row
+     *
+     * @return This pipeline
+     */
+    public RowPipeline distinct() {
+        this.distinct = true;
+        return this;
+    }
+
+    /**
+     * Runs all stages on a row
+     *
+     * @return <code>false</code> if the row was dropped
+     */
+    private boolean run(Row row) {
+        for (int i = 0; i < stages.size(); i++) {
+            if (!stages.get(i).test(row))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Apply the pipeline to a table (in place)
+     *
+     * @param table
+     *            The table
+     */
+    public void apply(final Table table) {
+        int rows = table.getRowCount();
+        int nCols = table.getColumnCount();
+        Row row = new Row(table.getSchema());
+        String[] orig = new String[nCols];
+        final String[] cells = new String[nCols];
+        FingerprintSet unique = distinct ? new FingerprintSet(rows) : null;
+        int[] keep = new int[rows];
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
+            table.getRow(r, orig);
+            System.arraycopy(orig, 0, cells, 0, nCols);
+            row.reset(cells);
+            if (!run(row))
+                continue;
+            if (unique != null
+                    && !unique.add(cells, r, o -> table.rowEquals(o, cells)))
+                continue;
+            for (int c = 0; c < nCols; c++)
+                if (cells[c] != orig[c])
+                    table.set(r, c, cells[c]);
+            keep[n++] = r;
+        }
+        table.selectRows(keep, n);
+    }
+
+    /**
+     * Apply the pipeline to the rows of a source while they are read. Rows
+     * which are shorter than the header line are filled up with empty cells.
+     *
+     * @param in
+     *            The source
+     * @return A source providing the resulting rows
+     */
+    public RowSource apply(final RowSource in) {
+        final String[] headers = in.getHeaders();
+        final Row row = new Row(new Schema(headers));
+        final FingerprintSet unique = distinct ? new FingerprintSet() : null;
+        return new RowSource() {
+
+            @Override
+            public String[] getHeaders() {
+                return headers.clone();
+            }
+
+            @Override
+            public String[] next() throws IOException {
+                String[] cells = null;
+                while ((cells = in.next()) != null) {
+                    if (cells.length < headers.length) {
+                        int n = cells.length;
+                        cells = Arrays.copyOf(cells, headers.length);
+                        Arrays.fill(cells, n, cells.length, "");
+                    }
+                    row.reset(cells);
+                    if (run(row) && (unique == null || unique.add(cells)))
+                        return cells;
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,18 @@
+package annotations;
+
+/**
+ * A condition on a whole row, see {@link RowPipeline}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public interface RowPredicate {
+
+    /**
+     * @param row
+     *            The row to check
+     * @return <code>true</code> if the row matches the condition
+     */
+    boolean test(Row row);
+
+}
@@ -0,0 +1,17 @@
+package annotations;
+
+/**
+ * Process (modify) a whole row, see {@link RowPipeline}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public interface RowProcessor {
+
+    /**
+     * @param row
+     *            The row to modify
+     */
+    void process(Row row);
+
+}
@@ -0,0 +1,54 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the rows of a CSV table one at a time
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public interface RowSink extends Closeable {
+
+    /**
+     * Write the header line; has to be called once before any row is
+     * written.
+     * 
+     * @param headers
+     *            The column headers
+     * @throws IOException
+     */
+    void writeHeaders(String[] headers) throws IOException;
+
+    /**
+     * Write a row
+     * 
+     * @param row
+     *            The row
+     * @throws IOException
+     */
+    void writeRow(String[] row) throws IOException;
+
+}
@@ -0,0 +1,350 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming variants of the row-by-row operations of {@link CSVTools}. Each
+ * method wraps a {@link RowSource} and returns a new {@link RowSource}
+ * which applies the operation to each row when it is read, so an arbitrary
+ * chain of operations can be run over a file with a single pass and without
+ * holding the file in memory, e.g.
+ * 
+ * <pre>
+ * RowSource in = new CSVRowReader(assayFile, '\t');
+ * in = RowStreams.format(in);
+ * in = RowStreams.renameColumn(in, 3, "Dataset Name");
+ * RowStreams.copy(in, new CSVRowWriter(outFile, ','));
+ * </pre>
+ * 
+ * The separator of the input and the output is determined by the reader and
+ * the writer, so {@link #format(RowSource)} only has to make sure that all
+ * rows have the same amount of columns.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class RowStreams {
+
+    /**
+     * Copies all rows from the source to the sink and closes both
+     * 
+     * @param in
+     *            The source
+     * @param out
+     *            The sink
+     * @return The number of rows copied (without the header)
+     * @throws IOException
+     */
+    public static int copy(RowSource in, RowSink out) throws IOException {
+        int n = 0;
+        try {
+            out.writeHeaders(in.getHeaders());
+            String[] row = null;
+            while ((row = in.next()) != null) {
+                out.writeRow(row);
+                n++;
+            }
+        } finally {
+            try {
+                in.close();
+            } finally {
+                out.close();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Makes sure that all rows have the some amount of columns as the
+     * header, see {@link CSVTools#format(String, char, char)}
+     * 
+     * @param in
+     *            The source
+     * @return See above
+     */
+    public static RowSource format(RowSource in) {
+        return new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                if (row.length == headers.length)
+                    return row;
+                String[] result = Arrays.copyOf(row, headers.length);
+                for (int i = row.length; i < result.length; i++)
+                    result[i] = "";
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Prefix/Postfix the content of each cell of a specific column, see
+     * {@link CSVTools#prefixColumn(String, int, char, String, String)}
+     * 
+     * @param in
+     *            The source
+     * @param columnIndex
+     *            The column index
+     * @param prefix
+     *            The prefix text
+     * @param postfix
+     *            The postfix text
+     * @return See above
+     */
+    public static RowSource prefixColumn(RowSource in, final int columnIndex,
+            final String prefix, final String postfix) {
+        return new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                if (prefix != null && prefix.length() > 0)
+                    row[columnIndex] = prefix + row[columnIndex];
+                if (postfix != null && postfix.length() > 0)
+                    row[columnIndex] = row[columnIndex] + postfix;
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Simply copies the content of one column to another, see
+     * {@link CSVTools#copyContent(String, int, int, boolean, char)}
+     * 
+     * @param in
+     *            The source
+     * @param fromColumn
+     *            The source column index
+     * @param toColumn
+     *            The target column index
+     * @param overwrite
+     *            Specify <code>true</code> if the content of the target cell
+     *            should be overwritten. Otherwise only empty cells will be
+     *            affected.
+     * @return See above
+     */
+    public static RowSource copyContent(RowSource in, final int fromColumn,
+            final int toColumn, final boolean overwrite) {
+        return new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                if (overwrite || row[toColumn].isEmpty())
+                    row[toColumn] = row[fromColumn];
+                return row;
+            }
+        };
+    }
+
+    /**
+     * Swap two columns
+     * 
+     * @param in
+     *            The source
+     * @param index1
+     *            The column to swap
+     * @param index2
+     *            The column to swap with
+     * @return See above
+     */
+    public static RowSource swapColumns(RowSource in, final int index1,
+            final int index2) {
+        Stage s = new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                swap(row, index1, index2);
+                return row;
+            }
+        };
+        swap(s.headers, index1, index2);
+        return s;
+    }
+
+    /**
+     * Remove a column
+     * 
+     * @param in
+     *            The source
+     * @param colIndex
+     *            The index of the column to remove
+     * @return See above
+     */
+    public static RowSource removeColumn(RowSource in, final int colIndex) {
+        Stage s = new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                return remove(row, colIndex);
+            }
+        };
+        s.headers = remove(s.headers, colIndex);
+        return s;
+    }
+
+    /**
+     * Rename column
+     * 
+     * @param in
+     *            The source
+     * @param index
+     *            The index of the column to rename
+     * @param name
+     *            The name
+     * @return See above
+     */
+    public static RowSource renameColumn(RowSource in, int index, String name) {
+        Stage s = new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                return row;
+            }
+        };
+        s.headers[index] = name;
+        return s;
+    }
+
+    /**
+     * Remove rows which cells of a specific column match a specific filter
+     * 
+     * @param in
+     *            The source
+     * @param colIndex
+     *            The column index
+     * @param filter
+     *            The filter
+     * @return See above
+     */
+    public static RowSource filter(RowSource in, final int colIndex,
+            final Filter filter) {
+        return new Stage(in) {
+            @Override
+            String[] apply(String[] row) {
+                return filter.filter(row[colIndex]) ? null : row;
+            }
+        };
+    }
+
+    /**
+     * Process (modify the content of) cells of a specific column. Also makes
+     * sure that there are no duplicate rows in the output, which means that
+     * the distinct rows are kept in memory.
+     * 
+     * @param in
+     *            The source
+     * @param colIndex
+     *            The column index
+     * @param processor
+     *            The processor
+     * @return See above
+     */
+    public static RowSource process(RowSource in, final int colIndex,
+            final Processor processor) {
+        return new Stage(in) {
+            final FingerprintSet unique = new FingerprintSet();
+
+            @Override
+            String[] apply(String[] row) {
+                row[colIndex] = processor.process(row[colIndex]);
+                return unique.add(row) ? row : null;
+            }
+        };
+    }
+
+    /**
+     * Merges new columns onto the rows using certain columns as 'Key', see
+     * {@link CSVTools#mergeColumns(String, String, String[], char)}. Both
+     * sources must be sorted by the key columns (see {@link SortMergeJoin}
+     * for other join semantics and for sorting unsorted sources first).
+     * 
+     * @param in
+     *            The source
+     * @param content
+     *            The source with the additional columns
+     * @param keys
+     *            The columns to use as 'Key'
+     * @return See above
+     * @throws IOException
+     */
+    public static RowSource mergeColumns(RowSource in, RowSource content,
+            String[] keys) throws IOException {
+        return new SortMergeJoin(keys).join(in, content);
+    }
+
+    private static void swap(String[] row, int index1, int index2) {
+        String tmp = row[index1];
+        row[index1] = row[index2];
+        row[index2] = tmp;
+    }
+
+    private static String[] remove(String[] row, int index) {
+        if (index >= row.length)
+            return row;
+        String[] result = new String[row.length - 1];
+        System.arraycopy(row, 0, result, 0, index);
+        System.arraycopy(row, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * A source which applies an operation to each row of another source
+     */
+    private static abstract class Stage implements RowSource {
+
+        final RowSource in;
+
+        String[] headers;
+
+        Stage(RowSource in) {
+            this.in = in;
+            this.headers = in.getHeaders();
+        }
+
+        /**
+         * Apply the operation
+         * 
+         * @param row
+         *            The row
+         * @return The modified row or <code>null</code> if the row should be
+         *         skipped
+         */
+        abstract String[] apply(String[] row);
+
+        @Override
+        public String[] getHeaders() {
+            return headers.clone();
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            String[] row = null;
+            while ((row = in.next()) != null) {
+                row = apply(row);
+                if (row != null)
+                    return row;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
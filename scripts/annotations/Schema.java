@@ -0,0 +1,270 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The column headers of a table. Looking up a column by its name is a hash
+ * lookup; the name to index map is kept up to date when columns are added,
+ * removed, swapped or renamed, so resolving a column never depends on the
+ * size of the table.
+ *
+ * Duplicate headers are allowed (e.g. the repeated 'Term Source REF' columns
+ * of ISA-Tab files), a lookup always returns the first column with this name
+ * though (like {@link List#indexOf(Object)}). Use {@link #getDuplicates()} to
+ * check for them.
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class Schema {
+
+    /** The headers in column order */
+    private final List<String> names;
+
+    /** Header name -> index of the first column with this name */
+    private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+    /**
+     * Creates a new schema
+     *
+     * @param names
+     *            The column headers
+     */
+    public Schema(String... names) {
+        this.names = new ArrayList<String>(Arrays.asList(names));
+        reindex(0);
+    }
+
+    /**
+     * Creates a schema from the header line of a CSV String; only the first
+     * line is read.
+     *
+     * @param input
+     *            The CSV String
+     * @param sep
+     *            The separator character
+     * @return See above
+     */
+    public static Schema of(String input, char sep) {
+        int end = input.indexOf('\n');
+        String line = end < 0 ? input : input.substring(0, end);
+        return new Schema(BasicCSVUtils.split(line, sep));
+    }
+
+    /**
+     * @return The number of columns
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Get the header of a column
+     *
+     * @param col
+     *            The column index
+     * @return See above
+     */
+    public String get(int col) {
+        return names.get(col);
+    }
+
+    /**
+     * @return The headers in column order
+     */
+    public String[] toArray() {
+        return names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Get the index of a column by its header name
+     *
+     * @param name
+     *            The name of the header
+     * @return The index of the (first) column with this name or -1 if there
+     *         is no such column
+     */
+    public int indexOf(String name) {
+        Integer i = index.get(name.trim());
+        return i != null ? i.intValue() : -1;
+    }
+
+    /**
+     * Get the index of a column by its header name
+     *
+     * @param name
+     *            The name of the header
+     * @return The index of the (first) column with this name
+     * @throws IllegalArgumentException
+     *             If there is no such column
+     */
+    public int require(String name) {
+        int i = indexOf(name);
+        if (i == -1)
+            throw new IllegalArgumentException("Column " + name
+                    + " not found!");
+        return i;
+    }
+
+    /**
+     * Check if there is a column with this name
+     *
+     * @param name
+     *            The name of the header
+     * @return See above
+     */
+    public boolean contains(String name) {
+        return indexOf(name) != -1;
+    }
+
+    /**
+     * @return The header names which are used for more than one column (in
+     *         column order)
+     */
+    public Set<String> getDuplicates() {
+        Set<String> result = new LinkedHashSet<String>();
+        for (int c = 0; c < names.size(); c++) {
+            if (index.get(names.get(c)).intValue() != c)
+                result.add(names.get(c));
+        }
+        return result;
+    }
+
+    /**
+     * @return If there are duplicate header names
+     */
+    public boolean hasDuplicates() {
+        return index.size() != names.size();
+    }
+
+    /**
+     * Insert a column
+     *
+     * @param col
+     *            The index of the new column
+     * @param name
+     *            The header
+     */
+    void add(int col, String name) {
+        names.add(col, name);
+        reindex(col);
+    }
+
+    /**
+     * Append a column
+     *
+     * @param name
+     *            The header
+     */
+    void add(String name) {
+        names.add(name);
+        Integer i = index.get(name);
+        if (i == null)
+            index.put(name, names.size() - 1);
+    }
+
+    /**
+     * Remove a column
+     *
+     * @param col
+     *            The index of the column
+     */
+    void remove(int col) {
+        names.remove(col);
+        reindex(col);
+    }
+
+    /**
+     * Remove several columns at once
+     *
+     * @param remove
+     *            The indices of the columns to remove
+     */
+    void remove(BitSet remove) {
+        int n = 0;
+        for (int c = 0; c < names.size(); c++) {
+            if (!remove.get(c))
+                names.set(n++, names.get(c));
+        }
+        names.subList(n, names.size()).clear();
+        reindex(remove.nextSetBit(0));
+    }
+
+    /**
+     * Swap two columns
+     *
+     * @param col1
+     *            The column to swap
+     * @param col2
+     *            The column to swap with
+     */
+    void swap(int col1, int col2) {
+        names.set(col1, names.set(col2, names.get(col1)));
+        reindex(Math.min(col1, col2));
+    }
+
+    /**
+     * Rename a column
+     *
+     * @param col
+     *            The index of the column
+     * @param name
+     *            The new header
+     */
+    void rename(int col, String name) {
+        names.set(col, name);
+        reindex(col);
+    }
+
+    /**
+     * Updates the index for all columns from 'from' on. Columns before 'from'
+     * did not change, so their names still map to their (first) index.
+     */
+    private void reindex(int from) {
+        if (from < 0)
+            return;
+        if (from == 0) {
+            index.clear();
+        } else {
+            index.values().removeIf(i -> i.intValue() >= from);
+        }
+        for (int c = from; c < names.size(); c++) {
+            if (!index.containsKey(names.get(c)))
+                index.put(names.get(c), c);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return names.toString();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import annotations.HashJoin.Match;
+import annotations.HashJoin.Type;
+
+/**
+ * Joins the columns of a 'content' source onto an 'input' source using
+ * certain columns as 'Key', like a {@link HashJoin}, but for sources which
+ * are sorted by the key columns (as Strings, like an {@link ExternalSorter}
+ * sorts them). Both sources are read in parallel and the joined rows are
+ * produced while reading, so only the content rows of the current key are
+ * held in memory. This allows to join tables which don't fit into memory.
+ * 
+ * If the sources are not sorted, set an {@link ExternalSorter} which sorts
+ * them first; otherwise the order is checked while reading and an
+ * IllegalStateException is thrown if a source is not sorted.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class SortMergeJoin {
+
+    private final String[] keys;
+
+    private Type type = Type.LEFT;
+
+    private Match match = Match.LAST;
+
+    private ExternalSorter sorter = null;
+
+    /**
+     * Creates a new left join of sorted sources, using the last matching
+     * content row
+     * 
+     * @param keys
+     *            The headers of the columns to use as 'Key'
+     */
+    public SortMergeJoin(String... keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * Set the join type (default: {@link Type#LEFT})
+     * 
+     * @param type
+     *            The join type
+     * @return This join
+     */
+    public SortMergeJoin setType(Type type) {
+        this.type = type;
+        return this;
+    }
+
+    /**
+     * Set how multiple matches are handled (default: {@link Match#LAST})
+     * 
+     * @param match
+     *            See above
+     * @return This join
+     */
+    public SortMergeJoin setMatch(Match match) {
+        this.match = match;
+        return this;
+    }
+
+    /**
+     * Set a sorter to sort the sources by the key columns before they are
+     * joined (default: <code>null</code>, i.e. the sources must already be
+     * sorted)
+     * 
+     * @param sorter
+     *            The sorter
+     * @return This join
+     */
+    public SortMergeJoin setSorter(ExternalSorter sorter) {
+        this.sorter = sorter;
+        return this;
+    }
+
+    /**
+     * Join the sources. The output rows are in the order of the input
+     * source (i.e. sorted by the key columns), several matches for the same
+     * input row are in the order of the content source.
+     * 
+     * @param input
+     *            The input source
+     * @param content
+     *            The source with the additional columns
+     * @return A source providing all columns of the input source followed by
+     *         the non-key columns of the content source. Closing it closes
+     *         both sources.
+     * @throws IOException
+     */
+    public RowSource join(RowSource input, RowSource content)
+            throws IOException {
+        try {
+            String[] inHeaders = input.getHeaders();
+            String[] cHeaders = content.getHeaders();
+            Schema inSchema = new Schema(inHeaders);
+            Schema cSchema = new Schema(cHeaders);
+            int[] inKeyIndex = new int[keys.length];
+            int[] cKeyIndex = new int[keys.length];
+            boolean[] isKey = new boolean[cHeaders.length];
+            for (int k = 0; k < keys.length; k++) {
+                inKeyIndex[k] = inSchema.indexOf(keys[k]);
+                cKeyIndex[k] = cSchema.indexOf(keys[k]);
+                if (inKeyIndex[k] == -1)
+                    throw new IllegalArgumentException("Key header " + keys[k]
+                            + " not found in input!");
+                if (cKeyIndex[k] == -1)
+                    throw new IllegalArgumentException("Key header " + keys[k]
+                            + " not found in content!");
+                isKey[cKeyIndex[k]] = true;
+            }
+
+            // the content columns which are added to the output
+            int[] cCols = new int[cHeaders.length - keys.length];
+            String[] header = Arrays.copyOf(inHeaders, inHeaders.length
+                    + cCols.length);
+            int n = 0;
+            for (int c = 0; c < isKey.length; c++) {
+                if (!isKey[c]) {
+                    header[inHeaders.length + n] = cHeaders[c];
+                    cCols[n++] = c;
+                }
+            }
+
+            if (sorter != null) {
+                input = sorter.sort(input, inKeyIndex);
+                content = sorter.sort(content, cKeyIndex);
+            }
+            return new Joined(input, inKeyIndex, content, cKeyIndex, cCols,
+                    header);
+        } catch (IOException | RuntimeException e) {
+            try {
+                input.close();
+            } finally {
+                content.close();
+            }
+            throw e;
+        }
+    }
+
+    private static String cell(String[] row, int col) {
+        return col < row.length && row[col] != null ? row[col] : "";
+    }
+
+    private static int compare(String[] row1, int[] keyIndex1, String[] row2,
+            int[] keyIndex2) {
+        for (int k = 0; k < keyIndex1.length; k++) {
+            int cmp = cell(row1, keyIndex1[k]).compareTo(
+                    cell(row2, keyIndex2[k]));
+            if (cmp != 0)
+                return cmp;
+        }
+        return 0;
+    }
+
+    /**
+     * The joined rows
+     */
+    private class Joined implements RowSource {
+
+        private final RowSource input;
+
+        private final int[] inKeyIndex;
+
+        private final RowSource content;
+
+        private final int[] cKeyIndex;
+
+        private final int[] cCols;
+
+        private final String[] headers;
+
+        private final int nIn;
+
+        /** The next content row which is not part of the group yet */
+        private String[] cNext;
+
+        /** The content rows (in order) of the key of the current group */
+        private final List<String[]> group = new ArrayList<String[]>();
+
+        /** The key of the current group (a content row) */
+        private String[] groupKey;
+
+        /** The current input row */
+        private String[] inRow;
+
+        /** The previous input row, to check the order of the input */
+        private String[] lastIn;
+
+        /** The current input row has no match and still has to be output */
+        private boolean unmatched = false;
+
+        /** The index of the next match of the current input row */
+        private int nextMatch;
+
+        /** The index after the last match of the current input row */
+        private int endMatch;
+
+        Joined(RowSource input, int[] inKeyIndex, RowSource content,
+                int[] cKeyIndex, int[] cCols, String[] headers)
+                throws IOException {
+            this.input = input;
+            this.inKeyIndex = inKeyIndex;
+            this.content = content;
+            this.cKeyIndex = cKeyIndex;
+            this.cCols = cCols;
+            this.headers = headers;
+            this.nIn = headers.length - cCols.length;
+            this.cNext = content.next();
+        }
+
+        @Override
+        public String[] getHeaders() {
+            return headers.clone();
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            while (inRow == null || nextMatch >= endMatch) {
+                if (unmatched) {
+                    // no match, output the input row once
+                    unmatched = false;
+                    return output(inRow, null);
+                }
+                inRow = input.next();
+                if (inRow == null)
+                    return null;
+                if (lastIn != null
+                        && compare(lastIn, inKeyIndex, inRow, inKeyIndex) > 0)
+                    throw new IllegalStateException(
+                            "The input is not sorted by the key columns!");
+                lastIn = inRow;
+                findGroup();
+                unmatched = endMatch == 0 && type == Type.LEFT;
+            }
+            return output(inRow, group.get(nextMatch++));
+        }
+
+        /**
+         * Collects the content rows with the key of the current input row
+         * (unless the previous input row had the same key)
+         */
+        private void findGroup() throws IOException {
+            if (groupKey == null
+                    || compare(inRow, inKeyIndex, groupKey, cKeyIndex) != 0) {
+                group.clear();
+                groupKey = null;
+                // skip content rows with smaller keys
+                while (cNext != null
+                        && compare(cNext, cKeyIndex, inRow, inKeyIndex) < 0)
+                    advance();
+                while (cNext != null
+                        && compare(cNext, cKeyIndex, inRow, inKeyIndex) == 0) {
+                    if (match == Match.ALL || group.isEmpty())
+                        group.add(cNext);
+                    else if (match == Match.LAST)
+                        group.set(0, cNext);
+                    groupKey = cNext;
+                    advance();
+                }
+            }
+            nextMatch = 0;
+            endMatch = group.size();
+        }
+
+        private void advance() throws IOException {
+            String[] previous = cNext;
+            cNext = content.next();
+            if (cNext != null
+                    && compare(previous, cKeyIndex, cNext, cKeyIndex) > 0)
+                throw new IllegalStateException(
+                        "The content is not sorted by the key columns!");
+        }
+
+        private String[] output(String[] in, String[] c) {
+            String[] row = new String[headers.length];
+            for (int i = 0; i < nIn; i++)
+                row[i] = cell(in, i);
+            for (int i = 0; i < cCols.length; i++)
+                row[nIn + i] = c != null ? cell(c, cCols[i]) : "";
+            return row;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                input.close();
+            } finally {
+                content.close();
+            }
+        }
+    }
+}
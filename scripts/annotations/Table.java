@@ -0,0 +1,749 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import static annotations.BasicCSVUtils.join;
+import static annotations.BasicCSVUtils.split;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * An in-memory, column oriented CSV table. The CSV data is parsed once into
+ * the table, all the operations of {@link CSVTools} can then be applied
+ * directly to the table, and the result is serialized once at the end.
+ *
+ * In contrast to the {@link CSVTools} methods row indices of a table do not
+ * include the header line, i.e. row 0 is the first data row.
+ *
+ * Every row has exactly as many cells as there are headers; shorter lines are
+ * filled up with empty cells, longer lines are truncated (see
+ * {@link CSVTools#format(String, char, char)}).
+ *
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class Table {
+
+    /** The column headers */
+    private final Schema schema;
+
+    /** The cells, one per column */
+    private List<Column> columns = new ArrayList<Column>();
+
+    /** The number of (data) rows */
+    private int rows = 0;
+
+    /**
+     * Creates an empty table with the given headers
+     *
+     * @param headers
+     *            The column headers
+     */
+    public Table(String[] headers) {
+        this.schema = new Schema(headers);
+        for (int c = 0; c < headers.length; c++)
+            this.columns.add(new Column.Plain(new String[0]));
+    }
+
+    /**
+     * Parses a CSV String into a table. The first line must be the header
+     * line. Empty lines are ignored. Large inputs are parsed in parallel (see
+     * {@link ParallelCSVParser}).
+     *
+     * @param input
+     *            The CSV String
+     * @param sep
+     *            The separator character
+     * @return The table
+     */
+    public static Table parse(String input, char sep) {
+        ParallelCSVParser parser = new ParallelCSVParser(CSVFormat.of(sep));
+        final String[] headers = parser.parseHeader(input);
+        if (headers == null)
+            throw new IllegalArgumentException("No header line found!");
+        return Loader.toTable(headers, parser.parseBody(input,
+                () -> new Loader(headers), Loader::add));
+    }
+
+    /**
+     * Reads a CSV file into a table. The first line must be the header line.
+     * Empty lines are ignored. The lines are parsed in parallel while the
+     * file is read (see {@link ParallelCSVParser}).
+     *
+     * @param inFile
+     *            The file to read
+     * @param sep
+     *            The separator character
+     * @return The table
+     * @throws IOException
+     */
+    public static Table read(String inFile, char sep) throws IOException {
+        BufferedReader r = new BufferedReader(new FileReader(inFile));
+        try {
+            String line = r.readLine();
+            while (line != null && line.trim().isEmpty())
+                line = r.readLine();
+            if (line == null)
+                throw new IllegalArgumentException("No header line found!");
+            ParallelCSVParser parser = new ParallelCSVParser(
+                    CSVFormat.of(sep));
+            final String[] headers = split(line, sep);
+            return Loader.toTable(headers, parser.parseBody(r,
+                    () -> new Loader(headers), Loader::add));
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Reads all rows of a source into a table and closes the source
+     *
+     * @param in
+     *            The source
+     * @return The table
+     * @throws IOException
+     */
+    public static Table read(RowSource in) throws IOException {
+        try {
+            Loader loader = new Loader(in.getHeaders());
+            String[] row = null;
+            while ((row = in.next()) != null)
+                loader.add(row);
+            return loader.toTable();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the table to a CSV file
+     *
+     * @param outFile
+     *            The file to write
+     * @param sep
+     *            The separator character
+     * @throws IOException
+     */
+    public void write(String outFile, char sep) throws IOException {
+        BufferedWriter w = new BufferedWriter(new FileWriter(outFile));
+        try {
+            write(w, sep);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Writes the table as CSV
+     *
+     * @param w
+     *            The writer
+     * @param sep
+     *            The separator character
+     * @throws IOException
+     */
+    public void write(Writer w, char sep) throws IOException {
+        w.write(join(getHeaders(), sep));
+        w.write('\n');
+        String[] row = new String[schema.size()];
+        for (int r = 0; r < rows; r++) {
+            w.write(join(getRow(r, row), sep));
+            w.write('\n');
+        }
+    }
+
+    /**
+     * Writes the table to a sink and closes the sink
+     *
+     * @param out
+     *            The sink
+     * @throws IOException
+     */
+    public void write(RowSink out) throws IOException {
+        try {
+            out.writeHeaders(getHeaders());
+            for (int r = 0; r < rows; r++)
+                out.writeRow(getRow(r));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Serializes the table into a CSV String
+     *
+     * @param sep
+     *            The separator character
+     * @return See above
+     */
+    public String toString(char sep) {
+        StringBuilder output = new StringBuilder();
+        output.append(join(getHeaders(), sep)).append('\n');
+        String[] row = new String[schema.size()];
+        for (int r = 0; r < rows; r++)
+            output.append(join(getRow(r, row), sep)).append('\n');
+        return output.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString(',');
+    }
+
+    /**
+     * @return The number of columns
+     */
+    public int getColumnCount() {
+        return schema.size();
+    }
+
+    /**
+     * @return The number of (data) rows
+     */
+    public int getRowCount() {
+        return rows;
+    }
+
+    /**
+     * @return The column headers
+     */
+    public String[] getHeaders() {
+        return schema.toArray();
+    }
+
+    /**
+     * @return The schema (column headers) of this table
+     */
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Get the header of a column
+     *
+     * @param col
+     *            The column index
+     * @return See above
+     */
+    public String getHeader(int col) {
+        return schema.get(col);
+    }
+
+    /**
+     * Get the index of a column by its header name
+     *
+     * @param name
+     *            The name of the header
+     * @return The index of the column or -1 if there is no such column
+     */
+    public int getColumnIndex(String name) {
+        return schema.indexOf(name);
+    }
+
+    /**
+     * Get the content of a cell
+     *
+     * @param row
+     *            The row index
+     * @param col
+     *            The column index
+     * @return See above
+     */
+    public String get(int row, int col) {
+        checkRow(row);
+        return columns.get(col).get(row);
+    }
+
+    /**
+     * Set the content of a cell
+     *
+     * @param row
+     *            The row index
+     * @param col
+     *            The column index
+     * @param value
+     *            The new content
+     */
+    public void set(int row, int col, String value) {
+        checkRow(row);
+        columns.get(col).set(row, value == null ? "" : value);
+    }
+
+    /**
+     * Get a whole row
+     *
+     * @param row
+     *            The row index
+     * @return See above
+     */
+    public String[] getRow(int row) {
+        return getRow(row, new String[schema.size()]);
+    }
+
+    /**
+     * Copies a whole row into the given array
+     *
+     * @param row
+     *            The row index
+     * @param dest
+     *            The array to copy the row into (must have at least
+     *            {@link #getColumnCount()} elements)
+     * @return The dest array
+     */
+    public String[] getRow(int row, String[] dest) {
+        checkRow(row);
+        for (int c = 0; c < columns.size(); c++)
+            dest[c] = columns.get(c).get(row);
+        return dest;
+    }
+
+    /**
+     * Appends a row
+     *
+     * @param row
+     *            The cells of the row; missing cells are filled up with empty
+     *            cells, surplus cells are ignored.
+     */
+    public void addRow(String[] row) {
+        for (int c = 0; c < columns.size(); c++)
+            columns.get(c).add(rows,
+                    c < row.length && row[c] != null ? row[c] : "");
+        rows++;
+    }
+
+    /**
+     * Extract certain columns. Also makes sure that each row is unique.
+     *
+     * @param columnIndex
+     *            The columns to extract
+     * @return A new table with the extracted columns
+     */
+    public Table extractColumns(int[] columnIndex) {
+        String[] newHeaders = new String[columnIndex.length];
+        for (int i = 0; i < columnIndex.length; i++)
+            newHeaders[i] = schema.get(columnIndex[i]);
+
+        Table result = new Table(newHeaders);
+        FingerprintSet unique = new FingerprintSet(rows);
+        String[] outline = new String[columnIndex.length];
+        for (int r = 0; r < rows; r++) {
+            for (int j = 0; j < columnIndex.length; j++)
+                outline[j] = columns.get(columnIndex[j]).get(r);
+            if (unique.add(outline, result.getRowCount(),
+                    o -> result.rowEquals(o, outline)))
+                result.addRow(outline);
+        }
+        result.encodeColumns();
+        return result;
+    }
+
+    /**
+     * Add a column.
+     *
+     * @param colIndex
+     *            The column index
+     * @param content
+     *            The content of the column
+     * @param header
+     *            The header of the column
+     */
+    public void addNewColumn(int colIndex, String content, String header) {
+        int index = Math.min(colIndex, schema.size());
+        schema.add(index, header);
+        columns.add(index,
+                Column.constant(content == null ? "" : content, rows));
+    }
+
+    /**
+     * Merges new columns onto the table using certain columns as 'Key', see
+     * {@link CSVTools#mergeColumns(String, String, String[], char)}. If there
+     * are several matching rows in the content table, the last one is used.
+     * Use a {@link HashJoin} directly for other join semantics.
+     *
+     * @param content
+     *            The additional columns
+     * @param keys
+     *            The columns to use as 'Key'
+     */
+    public void mergeColumns(Table content, String[] keys) {
+        Table merged = new HashJoin(keys).join(this, content);
+        // keep the schema instance, the input columns come first
+        for (int c = schema.size(); c < merged.getColumnCount(); c++)
+            schema.add(merged.getHeader(c));
+        this.columns = merged.columns;
+        this.rows = merged.rows;
+    }
+
+    /**
+     * Simply copies the content of one column to another
+     *
+     * @param fromColumn
+     *            The source column index
+     * @param toColumn
+     *            The target column index
+     * @param overwrite
+     *            Specify <code>true</code> if the content of the target cell
+     *            should be overwritten. Otherwise only empty cells will be
+     *            affected.
+     */
+    public void copyContent(int fromColumn, int toColumn, boolean overwrite) {
+        Column from = columns.get(fromColumn);
+        Column to = columns.get(toColumn);
+        for (int r = 0; r < rows; r++) {
+            if (overwrite || to.get(r).isEmpty())
+                to.set(r, from.get(r));
+        }
+    }
+
+    /**
+     * Removes rows with duplicate information, see
+     * {@link CSVTools#shrink(String, int[], int[], char)}.
+     *
+     * @param keyColumns
+     *            The columns which should be unique
+     * @param compress
+     *            The columns to concatenate
+     */
+    public void shrink(int[] keyColumns, int[] compress) {
+        GroupBy groupBy = new GroupBy(keyColumns);
+        for (int c : compress)
+            groupBy.aggregate(c, Aggregators.distinctConcat(";"));
+        Table shrunk = groupBy.apply(this);
+        this.columns = shrunk.columns;
+        this.rows = shrunk.rows;
+    }
+
+    /**
+     * Prefix/Postfix the content of each cell of a specific column
+     *
+     * @param columnIndex
+     *            The column index
+     * @param prefix
+     *            The prefix text
+     * @param postfix
+     *            The postfix text
+     */
+    public void prefixColumn(int columnIndex, String prefix, String postfix) {
+        final String pre = prefix != null ? prefix : "";
+        final String post = postfix != null ? postfix : "";
+        if (!pre.isEmpty() || !post.isEmpty())
+            columns.get(columnIndex).process(
+                    BatchProcessor.of(v -> pre + v + post), rows);
+    }
+
+    /**
+     * Remove a row
+     *
+     * @param rowIndex
+     *            The index of the row to remove (0 is the first data row)
+     */
+    public void removeRow(int rowIndex) {
+        checkRow(rowIndex);
+        for (Column col : columns)
+            col.remove(rowIndex, rows);
+        rows--;
+    }
+
+    /**
+     * Remove a column
+     *
+     * @param colIndex
+     *            The index of the column to remove
+     */
+    public void removeColumn(int colIndex) {
+        schema.remove(colIndex);
+        columns.remove(colIndex);
+    }
+
+    /**
+     * Remove empty columns
+     */
+    public void removeEmptyColumns() {
+        BitSet empty = new BitSet(columns.size());
+        for (int c = 0; c < columns.size(); c++) {
+            if (columns.get(c).isBlank(rows))
+                empty.set(c);
+        }
+        removeColumns(empty);
+    }
+
+    /**
+     * Remove several columns at once
+     *
+     * @param remove
+     *            The indices of the columns to remove
+     */
+    public void removeColumns(BitSet remove) {
+        if (remove.isEmpty())
+            return;
+        List<Column> newColumns = new ArrayList<Column>(columns.size());
+        for (int c = 0; c < columns.size(); c++) {
+            if (!remove.get(c))
+                newColumns.add(columns.get(c));
+        }
+        schema.remove(remove);
+        columns = newColumns;
+    }
+
+    /**
+     * Swap two columns
+     *
+     * @param index1
+     *            The column to swap
+     * @param index2
+     *            The column to swap with
+     */
+    public void swapColumns(int index1, int index2) {
+        schema.swap(index1, index2);
+        columns.set(index1, columns.set(index2, columns.get(index1)));
+    }
+
+    /**
+     * Rename column
+     *
+     * @param index
+     *            The index of the column to rename
+     * @param name
+     *            The name
+     */
+    public void renameColumn(int index, String name) {
+        schema.rename(index, name);
+    }
+
+    /**
+     * Split column. If a column contains multiple values separated by
+     * 'separator2', this column will be removed and multiple columns
+     * containing the single values attached at the end.
+     *
+     * @param columnIndex
+     *            The index of the column to split
+     * @param separator2
+     *            The separator character by which the multiple values are
+     *            separated
+     */
+    public void splitColumn(int columnIndex, char separator2) {
+        Column col = columns.get(columnIndex);
+        String[][] values = new String[rows][];
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
+            values[r] = col.get(r).isEmpty() ? new String[0] : split(
+                    col.get(r), separator2);
+            n = Math.max(n, values[r].length);
+        }
+
+        String columnHeader = schema.get(columnIndex);
+        removeColumn(columnIndex);
+        for (int i = 0; i < n; i++) {
+            String[] newCol = new String[rows];
+            for (int r = 0; r < rows; r++)
+                newCol[r] = i < values[r].length ? values[r][i] : "";
+            schema.add(columnHeader + " " + (i + 1));
+            columns.add(Column.of(newCol, rows));
+        }
+    }
+
+    /**
+     * Process (modify the content of) cells of a specific column. Also makes
+     * sure that there are no duplicate rows in the output.
+     *
+     * @param colIndex
+     *            The column index
+     * @param processor
+     *            The processor
+     */
+    public void process(int colIndex, Processor processor) {
+        process(colIndex, BatchProcessor.of(processor));
+    }
+
+    /**
+     * Process (modify the content of) cells of a specific column, all cells
+     * of the column at once. Also makes sure that there are no duplicate rows
+     * in the output.
+     *
+     * @param colIndex
+     *            The column index
+     * @param processor
+     *            The processor
+     */
+    public void process(int colIndex, BatchProcessor processor) {
+        columns.get(colIndex).process(processor, rows);
+        removeDuplicateRows();
+    }
+
+    /**
+     * Remove rows which cells of a specific column match a specific filter.
+     *
+     * @param colIndex
+     *            The column index
+     * @param filter
+     *            The filter
+     */
+    public void filter(int colIndex, Filter filter) {
+        filter(colIndex, BatchFilter.of(filter));
+    }
+
+    /**
+     * Remove rows which cells of a specific column match a specific filter,
+     * checking all cells of the column at once.
+     *
+     * @param colIndex
+     *            The column index
+     * @param filter
+     *            The filter
+     */
+    public void filter(int colIndex, BatchFilter filter) {
+        int[] keep = new int[rows];
+        int n = columns.get(colIndex).filter(filter, rows, keep);
+        selectRows(keep, n);
+    }
+
+    /**
+     * Removes all rows which are an exact copy of a previous row
+     */
+    public void removeDuplicateRows() {
+        FingerprintSet unique = new FingerprintSet(rows);
+        String[] row = new String[schema.size()];
+        int[] keep = new int[rows];
+        int n = 0;
+        for (int r = 0; r < rows; r++) {
+            if (unique.add(getRow(r, row), r, o -> rowEquals(o, row)))
+                keep[n++] = r;
+        }
+        selectRows(keep, n);
+    }
+
+    /**
+     * Check if a row has the given content
+     *
+     * @param row
+     *            The row index
+     * @param content
+     *            The content
+     * @return See above
+     */
+    boolean rowEquals(int row, String[] content) {
+        for (int c = 0; c < columns.size(); c++) {
+            if (!columns.get(c).get(row).equals(content[c]))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Only keep the specified rows
+     *
+     * @param keep
+     *            The indices of the rows to keep in ascending order
+     * @param n
+     *            The number of valid entries in keep
+     */
+    void selectRows(int[] keep, int n) {
+        if (n == rows)
+            return;
+        for (int c = 0; c < columns.size(); c++)
+            columns.set(c, columns.get(c).select(keep, n));
+        rows = n;
+    }
+
+    /**
+     * Chooses the encoding of each column, see {@link Column}. Called after
+     * bulk operations which build a new table row by row.
+     */
+    void encodeColumns() {
+        for (int c = 0; c < columns.size(); c++)
+            columns.set(c, columns.get(c).encode(rows));
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows)
+            throw new IndexOutOfBoundsException("Row " + row
+                    + " out of bounds (rows: " + rows + ")");
+    }
+
+    /**
+     * Collects the parsed rows column by column
+     */
+    private static class Loader {
+
+        private final String[] headers;
+
+        private final String[][] columns;
+
+        private int rows = 0;
+
+        Loader(String[] headers) {
+            this.headers = headers;
+            this.columns = new String[headers.length][16];
+        }
+
+        void add(String[] parts) {
+            if (rows == columns[0].length) {
+                for (int c = 0; c < columns.length; c++)
+                    columns[c] = Arrays.copyOf(columns[c], rows * 2);
+            }
+            for (int c = 0; c < columns.length; c++)
+                columns[c][rows] = c < parts.length ? parts[c] : "";
+            rows++;
+        }
+
+        Table toTable() {
+            Table t = new Table(headers);
+            for (int c = 0; c < columns.length; c++)
+                t.columns.set(c, Column.of(columns[c], rows));
+            t.rows = rows;
+            return t;
+        }
+
+        /**
+         * Concatenates the rows of several loaders (e.g. of the chunks of a
+         * file) into a table. The columns are copied one at a time and
+         * released from the loaders right away.
+         */
+        static Table toTable(String[] headers, List<Loader> loaders) {
+            int rows = 0;
+            for (Loader l : loaders)
+                rows += l.rows;
+            Table t = new Table(headers);
+            for (int c = 0; c < headers.length; c++) {
+                String[] column = new String[rows];
+                int n = 0;
+                for (Loader l : loaders) {
+                    System.arraycopy(l.columns[c], 0, column, n, l.rows);
+                    n += l.rows;
+                    l.columns[c] = null;
+                }
+                t.columns.set(c, Column.of(column, rows));
+            }
+            t.rows = rows;
+            return t;
+        }
+    }
+}
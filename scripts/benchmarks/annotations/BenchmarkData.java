@@ -0,0 +1,134 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the benchmark input from the files of the repository. The real
+ * files are used as they are for the smallest size, larger inputs are
+ * synthesized by repeating their rows with modified (unique) names.
+ * 
+ * The repository root is taken from the system property "idr.repo"
+ * (default: the working directory).
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class BenchmarkData {
+
+    public static final String REPO = System.getProperty("idr.repo", ".");
+
+    public static final String ANNOTATION_FILE = REPO
+            + "/experimentA/idr0045-experimentA-annotation.csv";
+
+    public static final String FILE_LISTING = REPO + "/filelisting.txt";
+
+    /**
+     * Creates an annotation table with the given number of rows, based on
+     * the rows of the annotation.csv of the repository; the first two
+     * columns ("Dataset Name" and "Image Name") are unique.
+     * 
+     * @param rows
+     *            The number of (data) rows
+     * @return The CSV String
+     * @throws IOException
+     */
+    public static String annotations(int rows) throws IOException {
+        String[] lines = CSVTools.readFile(ANNOTATION_FILE).split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append(lines[0]).append('\n');
+        for (int i = 0; i < rows; i++) {
+            String[] parts = BasicCSVUtils.split(lines[1 + i % (lines.length - 1)]);
+            int copy = i / (lines.length - 1);
+            if (copy > 0) {
+                parts[0] = parts[0] + "-" + copy;
+                parts[1] = parts[1] + "-" + copy;
+            }
+            sb.append(BasicCSVUtils.join(parts)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a table mapping the "Dataset Name" and "Image Name" of
+     * {@link #annotations(int)} to an additional "Image ID" column, in
+     * reverse order.
+     * 
+     * @param annotations
+     *            The annotation table
+     * @return The CSV String
+     */
+    public static String mapping(String annotations) {
+        String[] lines = annotations.split("\n");
+        StringBuilder sb = new StringBuilder();
+        sb.append("Image ID,Image Name,Dataset Name\n");
+        for (int i = lines.length - 1; i > 0; i--) {
+            String[] parts = BasicCSVUtils.split(lines[i]);
+            sb.append(BasicCSVUtils.join(new String[] { String.valueOf(i),
+                    parts[1], parts[0] })).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a file listing with the given number of paths, based on the
+     * filelisting.txt of the repository. The paths are repeated with a
+     * modified base name, so the figure methods of CombineImages handle
+     * them like the original paths.
+     * 
+     * @param paths
+     *            The number of paths
+     * @return See above
+     * @throws IOException
+     */
+    public static List<String> fileListing(int paths) throws IOException {
+        List<String> files = new ArrayList<String>();
+        MappedLineScanner s = new MappedLineScanner(FILE_LISTING);
+        try {
+            while (s.next()) {
+                LineView line = s.line();
+                if (line.startsWith("./") && line.indexOf('/', 2) > 0)
+                    files.add(line.toString());
+            }
+        } finally {
+            s.close();
+        }
+
+        List<String> result = new ArrayList<String>(paths);
+        for (int i = 0; i < paths; i++) {
+            String file = files.get(i % files.size());
+            int copy = i / files.size();
+            if (copy > 0) {
+                // ./Figure01A/Embryo10.EGFP... -> ./Figure01A/Embryo10r1.EGFP...
+                int nameStart = file.lastIndexOf('/') + 1;
+                int dot = file.indexOf('.', nameStart);
+                file = file.substring(0, dot) + "r" + copy
+                        + file.substring(dot);
+            }
+            result.add(file);
+        }
+        return result;
+    }
+}
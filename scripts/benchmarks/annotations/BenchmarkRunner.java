@@ -0,0 +1,71 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the annotation and prepimport code with the GC
+ * profiler (allocation rate per operation).
+ * 
+ * The benchmark classes are compiled together with the scripts, with
+ * jmh-core and jmh-generator-annprocess on the classpath, e.g.
+ * 
+ * <pre>
+ * javac -cp jmh-core.jar:jmh-generator-annprocess.jar -d classes \
+ *     $(find scripts/annotations scripts/prepimport scripts/benchmarks -name '*.java')
+ * java -cp classes:jmh-core.jar:jopt-simple.jar:commons-math3.jar \
+ *     -Didr.repo=. annotations.BenchmarkRunner [regexp] [-p param=values]
+ * </pre>
+ * 
+ * The optional regular expression selects the benchmarks (e.g.
+ * "CSVToolsBenchmark.shrink"), "-p rows=373,100000" restricts the
+ * parameters.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder opts = new OptionsBuilder();
+        boolean include = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-p")) {
+                String[] param = args[++i].split("=");
+                opts.param(param[0], param[1].split(","));
+            } else {
+                opts.include(args[i]);
+                include = true;
+            }
+        }
+        if (!include)
+            opts.include("annotations\\..*Benchmark|prepimport\\..*Benchmark");
+        Options options = opts.addProfiler(GCProfiler.class)
+                .jvmArgsPrepend("-Didr.repo=" + BenchmarkData.REPO).build();
+        new Runner(options).run();
+    }
+}
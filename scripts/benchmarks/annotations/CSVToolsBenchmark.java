@@ -0,0 +1,155 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link CSVTools} operations and their {@link Table}
+ * equivalents on annotation tables of different sizes. 374 rows is the real
+ * annotation.csv; the larger tables need a correspondingly large heap (about
+ * 8 GB for 10M rows).
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class CSVToolsBenchmark {
+
+    private static final char CSV = ',';
+
+    /** The number of rows of the annotation table */
+    @Param({ "373", "100000", "1000000", "10000000" })
+    public int rows;
+
+    private String annotations;
+
+    private String mapping;
+
+    private String tsv;
+
+    private int channels;
+
+    @Setup
+    public void setup() throws IOException {
+        annotations = BenchmarkData.annotations(rows);
+        mapping = BenchmarkData.mapping(annotations);
+        tsv = CSVTools.format(annotations, CSV, '\t');
+        channels = CSVTools.getColumnIndex(annotations, "Channels", CSV);
+    }
+
+    @Benchmark
+    public String format() {
+        return CSVTools.format(tsv, '\t', CSV);
+    }
+
+    @Benchmark
+    public int getColumnIndex() {
+        return CSVTools.getColumnIndex(annotations, "Channels", CSV);
+    }
+
+    @Benchmark
+    public String swapColumns() {
+        return CSVTools.swapColumns(annotations, 0, 2, CSV);
+    }
+
+    @Benchmark
+    public String removeColumn() {
+        return CSVTools.removeColumn(annotations, 2, CSV);
+    }
+
+    @Benchmark
+    public String removeEmptyColumns() {
+        return CSVTools.removeEmptyColumns(annotations, CSV);
+    }
+
+    @Benchmark
+    public String renameColumn() {
+        return CSVTools.renameColumn(annotations, 0, "Dataset", CSV);
+    }
+
+    @Benchmark
+    public String copyContent() {
+        return CSVTools.copyContent(annotations, 8, 9, false, CSV);
+    }
+
+    @Benchmark
+    public String process() {
+        return CSVTools.process(annotations, channels, CSV,
+                content -> content.replace(';', ','));
+    }
+
+    @Benchmark
+    public String filter() {
+        return CSVTools.filter(annotations, 0, CSV,
+                content -> content.startsWith("Supplementary"));
+    }
+
+    @Benchmark
+    public String extractColumns() {
+        return CSVTools.extractColumns(annotations, new int[] { 0, 2 }, CSV);
+    }
+
+    @Benchmark
+    public String shrink() {
+        return CSVTools.shrink(annotations, new int[] { 0 },
+                new int[] { channels }, CSV);
+    }
+
+    @Benchmark
+    public String mergeColumns() {
+        return CSVTools.mergeColumns(annotations, mapping, new String[] {
+                "Dataset Name", "Image Name" }, CSV);
+    }
+
+    @Benchmark
+    public Table parseTable() {
+        return Table.parse(annotations, CSV);
+    }
+
+    @Benchmark
+    public String tableRoundTrip() {
+        Table t = Table.parse(annotations, CSV);
+        t.removeEmptyColumns();
+        t.swapColumns(0, 2);
+        t.process(channels, content -> content.replace(';', ','));
+        return t.toString(CSV);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks splitting and joining single lines with {@link BasicCSVUtils}
+ * and {@link CSVParser}.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CSVUtilsBenchmark {
+
+    /** The row of the annotation.csv to use */
+    @Param({ "1", "100", "373" })
+    public int row;
+
+    private String line;
+
+    private String[] cells;
+
+    private final FieldBuffer fields = new FieldBuffer();
+
+    private final CSVParser parser = CSVFormat.CSV.newParser();
+
+    @Setup
+    public void setup() throws IOException {
+        line = CSVTools.readFile(BenchmarkData.ANNOTATION_FILE).split("\n")[row];
+        cells = BasicCSVUtils.split(line);
+    }
+
+    @Benchmark
+    public String[] split() {
+        return BasicCSVUtils.split(line);
+    }
+
+    @Benchmark
+    public String join() {
+        return BasicCSVUtils.join(cells);
+    }
+
+    @Benchmark
+    public int splitIntoBuffer() {
+        return parser.split(line, fields);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package annotations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Merge} with several annotation files of different sizes
+ * (each file has the given number of rows).
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+
+    /** The number of input files */
+    @Param({ "2", "10", "100" })
+    public int files;
+
+    /** The number of rows per input file */
+    @Param({ "373", "100000" })
+    public int rows;
+
+    private File dir;
+
+    private String[] inFiles;
+
+    private String outFile;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("merge-benchmark").toFile();
+        String content = BenchmarkData.annotations(rows);
+        inFiles = new String[files];
+        for (int i = 0; i < files; i++) {
+            inFiles[i] = new File(dir, "annotation" + i + ".csv")
+                    .getAbsolutePath();
+            // rotate the columns, so that the files have different headers
+            String rotated = i % 2 == 0 ? content : CSVTools.swapColumns(
+                    content, 2, 3, ',');
+            CSVTools.writeFile(inFiles[i], rotated);
+        }
+        outFile = new File(dir, "merged.csv").getAbsolutePath();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File f : dir.listFiles())
+            f.delete();
+        dir.delete();
+    }
+
+    @Benchmark
+    public void merge() throws Exception {
+        Merge.merge(outFile, inFiles);
+    }
+}
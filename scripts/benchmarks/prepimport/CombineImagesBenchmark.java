@@ -0,0 +1,103 @@
+package prepimport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import annotations.BenchmarkData;
+
+/**
+ * Benchmarks the figure methods of {@link CombineImages} on file listings of
+ * different sizes. 24,702 paths is the real filelisting.txt; 50M paths need
+ * a heap of about 16 GB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx20g")
+public class CombineImagesBenchmark {
+
+    /** The number of paths in the file listing */
+    @Param({ "24702", "1000000", "50000000" })
+    public int paths;
+
+    private List<String> files;
+
+    @Setup
+    public void setup() throws IOException {
+        files = BenchmarkData.fileListing(paths);
+    }
+
+    private static void reset() {
+        CombineImages.mapping.clear();
+        CombineImages.filePaths = "";
+    }
+
+    @Benchmark
+    public List<String> figure01A() {
+        reset();
+        return CombineImages.Figure01A(files);
+    }
+
+    @Benchmark
+    public List<String> supplementaryFigure05() {
+        reset();
+        return CombineImages.SupplementaryFigure05(files);
+    }
+
+    @Benchmark
+    public List<String> supplementaryFigure06A() {
+        reset();
+        return CombineImages.SupplementaryFigure06A(files);
+    }
+
+    /**
+     * All figures, as done by {@link CombineImages#main(String[])}
+     */
+    @Benchmark
+    public List<String> allFigures() {
+        reset();
+        List<String> cmds = new ArrayList<String>();
+        cmds.addAll(CombineImages.Figure01A(files));
+        cmds.addAll(CombineImages.Figure01C(files));
+        cmds.addAll(CombineImages.Figure01D(files));
+        cmds.addAll(CombineImages.Figure02(files));
+        cmds.addAll(CombineImages.Figure03(files));
+        cmds.addAll(CombineImages.Figure04(files));
+        cmds.addAll(CombineImages.SupplementaryFigure01(files));
+        cmds.addAll(CombineImages.SupplementaryFigure02(files));
+        cmds.addAll(CombineImages.SupplementaryFigure05(files));
+        cmds.addAll(CombineImages.SupplementaryFigure06A(files));
+        cmds.addAll(CombineImages.SupplementaryFigure06H(files));
+        cmds.addAll(CombineImages.SupplementaryFigure08(files));
+        cmds.addAll(CombineImages.SupplementaryFigure09(files));
+        cmds.addAll(CombineImages.SupplementaryFigure10A(files));
+        cmds.addAll(CombineImages.SupplementaryFigure10B(files));
+        return cmds;
+    }
+
+    /**
+     * All figures with a single pass over the listing, the figures running
+     * in parallel, see {@link CombineImages#dispatch(List)}
+     */
+    @Benchmark
+    public List<String> dispatch() {
+        reset();
+        return CombineImages.dispatch(files);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package prepimport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the commands created by the {@link NamingRule}s (the content of
+ * createPatternFiles.sh) directly with java.nio instead of a shell, i.e.
+ * creates the directories, symbolic links and *.pattern files without
+ * spawning a process per command. The commands of the datasets are run in
+ * parallel (one task per dataset), the commands of a dataset in order.
+ * 
+ * Only the commands which the rules create are supported:
+ * 
+ * <ul>
+ * <li><code>mkdir -p dir</code></li>
+ * <li><code>cd dir</code></li>
+ * <li><code>ln -s "target" "link"</code> (an existing link is replaced)</li>
+ * <li><code>echo "text" &gt; "file"</code></li>
+ * </ul>
+ * 
+ * Arguments can be double quoted, but quoted text must not contain
+ * characters which the shell would interpret (<code>$ ` \ "</code>). Other
+ * commands (e.g. from the <code>command</code> key of a rule) are rejected
+ * before anything is created, the script has to be used for them.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class Materializer {
+
+    private final Path root;
+
+    private int links = 0;
+
+    private int files = 0;
+
+    /**
+     * Creates a new materializer
+     * 
+     * @param root
+     *            The directory the commands are run in (the parent
+     *            directory of the original and the renamed files)
+     */
+    public Materializer(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Run the commands of several datasets in parallel
+     * 
+     * @param datasets
+     *            The commands of each dataset
+     * @throws IOException
+     *             If a command fails
+     */
+    public void run(List<List<String>> datasets) throws IOException {
+        List<List<List<String>>> parsed = new ArrayList<List<List<String>>>();
+        for (List<String> cmds : datasets) {
+            List<List<String>> dataset = new ArrayList<List<String>>();
+            for (String cmd : cmds)
+                dataset.add(parse(cmd));
+            parsed.add(dataset);
+        }
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<ForkJoinTask<int[]>>();
+        for (final List<List<String>> cmds : parsed) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    return runDataset(cmds);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        for (ForkJoinTask<int[]> task : tasks) {
+            try {
+                int[] n = task.join();
+                links += n[0];
+                files += n[1];
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Run the commands of one dataset; the working directory is the root
+     * directory at the beginning
+     * 
+     * @param cmds
+     *            The parsed commands, see {@link #parse(String)}
+     * @return The number of links and files created
+     * @throws IOException
+     *             If a command fails
+     */
+    private int[] runDataset(List<List<String>> cmds) throws IOException {
+        int[] n = new int[2];
+        Path dir = root;
+        for (List<String> args : cmds) {
+            String op = args.get(0);
+            if (op.equals("mkdir")) {
+                Files.createDirectories(dir.resolve(args.get(2)));
+            } else if (op.equals("cd")) {
+                dir = dir.resolve(args.get(1)).normalize();
+                if (!Files.isDirectory(dir))
+                    throw new IOException("No such directory: " + dir);
+            } else if (op.equals("ln")) {
+                Path link = dir.resolve(args.get(3));
+                Files.deleteIfExists(link);
+                Files.createSymbolicLink(link, Paths.get(args.get(2)));
+                n[0]++;
+            } else {
+                Files.write(dir.resolve(args.get(3)), (args.get(1) + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                n[1]++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Split a command into its arguments and check that it is supported
+     */
+    static List<String> parse(String cmd) throws IOException {
+        List<String> args = split(cmd);
+        if (args.size() == 3 && args.get(0).equals("mkdir")
+                && args.get(1).equals("-p"))
+            return args;
+        if (args.size() == 2 && args.get(0).equals("cd"))
+            return args;
+        if (args.size() == 4 && args.get(0).equals("ln")
+                && args.get(1).equals("-s"))
+            return args;
+        if (args.size() == 4 && args.get(0).equals("echo")
+                && args.get(2).equals(">"))
+            return args;
+        throw new IOException("Unsupported command: " + cmd);
+    }
+
+    /**
+     * Split a command into its arguments (separated by spaces, double
+     * quoted arguments can contain spaces)
+     */
+    private static List<String> split(String cmd) throws IOException {
+        List<String> args = new ArrayList<String>();
+        StringBuilder arg = null;
+        boolean quoted = false;
+        for (int i = 0; i < cmd.length(); i++) {
+            char c = cmd.charAt(i);
+            if (quoted) {
+                if (c == '"')
+                    quoted = false;
+                else if (c == '$' || c == '`' || c == '\\')
+                    throw new IOException("Unsupported command: " + cmd);
+                else
+                    arg.append(c);
+            } else if (c == '"') {
+                if (arg == null)
+                    arg = new StringBuilder();
+                quoted = true;
+            } else if (c == ' ') {
+                if (arg != null)
+                    args.add(arg.toString());
+                arg = null;
+            } else if (c == '$' || c == '`' || c == '\\' || c == '\''
+                    || c == ';' || c == '|' || c == '&' || c == '*') {
+                throw new IOException("Unsupported command: " + cmd);
+            } else {
+                if (arg == null)
+                    arg = new StringBuilder();
+                arg.append(c);
+            }
+        }
+        if (quoted)
+            throw new IOException("Unsupported command: " + cmd);
+        if (arg != null)
+            args.add(arg.toString());
+        return Collections.unmodifiableList(args);
+    }
+
+    /**
+     * @return The number of symbolic links created so far
+     */
+    public int getLinkCount() {
+        return links;
+    }
+
+    /**
+     * @return The number of (pattern) files created so far
+     */
+    public int getFileCount() {
+        return files;
+    }
+}
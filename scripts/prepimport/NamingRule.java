@@ -0,0 +1,749 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package prepimport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The naming scheme of the images of one dataset (figure directory), used
+ * by {@link CombineImages} to create the symbolic links with the _C, _T, _Z
+ * names and the *.pattern files. A rule consists of
+ * 
+ * <ul>
+ * <li>match: A regular expression with named groups (e.g. basename,
+ * channel, T, Z), which has to match the whole image file name; other files
+ * are ignored</li>
+ * <li>alias.&lt;group&gt;: Replaces the values of a group, e.g.
+ * <code>alias.channel = EGFP=Cep192, mCherry=EB3</code>; values without
+ * alias are replaced by default.&lt;group&gt; if specified</li>
+ * <li>rename: The name of the link, e.g.
+ * <code>{basename}_C{channel}_T{T}.tif</code> (default: the original file
+ * name); optional groups which didn't match are empty</li>
+ * <li>series: The name of the image series a file belongs to (default:
+ * <code>{basename}</code>)</li>
+ * <li>range: The groups with numeric indices, e.g. <code>T, Z</code>, for
+ * which the indices (per channel) are tracked</li>
+ * <li>pattern: The content of the series' pattern file. A range group is
+ * replaced by the range which all channels have in common, e.g.
+ * <code>{T:5}</code> by 00001-00100 (zero padded to 5 digits), the channel
+ * group by the channels of the series (in the order of the channel aliases),
+ * other groups by their distinct values separated by ',' and {series} by the
+ * series name. Without a pattern no pattern files are created and the files
+ * are linked individually.</li>
+ * <li>gaps: What to do if indices are missing within the range which all
+ * channels of a series have in common: <code>longest</code> (default) uses
+ * the longest contiguous range, <code>split</code> creates one pattern file
+ * per range of the first range group (name_1.pattern, name_2.pattern, ...).
+ * A warning is printed in both cases, and for series which don't have all
+ * channels of the dataset. Only the files within the range(s) of a pattern
+ * file are mapped to it; a series whose channels have no index in common
+ * gets no pattern file. The range groups are checked independently, i.e. a
+ * missing combination of indices (e.g. one Z plane of one time point) is
+ * not detected.</li>
+ * <li>command: Additional commands (e.g. manual corrections) appended to
+ * the script, can be specified several times (see {@link Materializer} for
+ * the commands which can be run without the script).</li>
+ * </ul>
+ * 
+ * The rules are read from a config file (see {@link #parse(Reader)}) with a
+ * [directory] line starting the rule of each dataset, followed by
+ * <code>key = value</code> lines. The expressions and templates are
+ * compiled once, and one matcher is reused for all files of a dataset.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class NamingRule {
+
+    /** Finds the names of the named groups of a regular expression */
+    private static final Pattern GROUP_NAME = Pattern
+            .compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private static final String CHANNEL = "channel";
+
+    private static final String SERIES = "series";
+
+    private final String dir;
+
+    private final Pattern match;
+
+    /** The names of the named groups of the expression */
+    private final List<String> groups = new ArrayList<String>();
+
+    private final List<Map<String, String>> aliases = new ArrayList<Map<String, String>>();
+
+    private final String[] defaults;
+
+    private Template rename = null;
+
+    private Template series = null;
+
+    private Template pattern = null;
+
+    /** The group indices of the range groups */
+    private int[] ranges = new int[0];
+
+    /** The group index of the channel group, -1 if there is none */
+    private final int channel;
+
+    /** Create one pattern file per contiguous range of the first range group */
+    private boolean split = false;
+
+    private final List<String> commands = new ArrayList<String>();
+
+    /**
+     * Creates a new rule
+     * 
+     * @param dir
+     *            The directory of the dataset
+     * @param match
+     *            The regular expression matching the file names
+     */
+    public NamingRule(String dir, String match) {
+        this.dir = dir;
+        this.match = Pattern.compile(match);
+        Matcher m = GROUP_NAME.matcher(match);
+        while (m.find()) {
+            groups.add(m.group(1));
+            aliases.add(null);
+        }
+        this.defaults = new String[groups.size()];
+        this.channel = groups.indexOf(CHANNEL);
+    }
+
+    /**
+     * @return The directory of the dataset
+     */
+    public String getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Replace the values of a group
+     * 
+     * @param group
+     *            The group name
+     * @param value
+     *            The value
+     * @param alias
+     *            The replacement
+     * @return This rule
+     */
+    public NamingRule setAlias(String group, String value, String alias) {
+        int g = group(group);
+        if (aliases.get(g) == null)
+            aliases.set(g, new LinkedHashMap<String, String>());
+        aliases.get(g).put(value, alias);
+        return this;
+    }
+
+    /**
+     * Set the replacement for the values of a group which don't have an
+     * alias
+     * 
+     * @param group
+     *            The group name
+     * @param value
+     *            The replacement
+     * @return This rule
+     */
+    public NamingRule setDefault(String group, String value) {
+        defaults[group(group)] = value;
+        return this;
+    }
+
+    /**
+     * @param template
+     *            The name of the links
+     * @return This rule
+     */
+    public NamingRule setRename(String template) {
+        this.rename = new Template(template);
+        return this;
+    }
+
+    /**
+     * @param template
+     *            The name of the image series
+     * @return This rule
+     */
+    public NamingRule setSeries(String template) {
+        this.series = new Template(template);
+        return this;
+    }
+
+    /**
+     * @param template
+     *            The content of the pattern files
+     * @return This rule
+     */
+    public NamingRule setPattern(String template) {
+        this.pattern = new Template(template);
+        return this;
+    }
+
+    /**
+     * @param groups
+     *            The groups with numeric indices
+     * @return This rule
+     */
+    public NamingRule setRanges(String... groups) {
+        ranges = new int[groups.length];
+        for (int i = 0; i < groups.length; i++)
+            ranges[i] = group(groups[i]);
+        return this;
+    }
+
+    /**
+     * Set how gaps in the indices of a series are handled (default: use the
+     * longest range which all channels have)
+     * 
+     * @param split
+     *            Pass <code>true</code> to create one pattern file per range
+     *            of the first range group instead
+     * @return This rule
+     */
+    public NamingRule setSplitGaps(boolean split) {
+        this.split = split;
+        return this;
+    }
+
+    /**
+     * @param command
+     *            An additional command for the script
+     * @return This rule
+     */
+    public NamingRule addCommand(String command) {
+        commands.add(command);
+        return this;
+    }
+
+    private int group(String name) {
+        int g = groups.indexOf(name);
+        if (g < 0)
+            throw new IllegalArgumentException("Group " + name
+                    + " not found in " + match.pattern());
+        return g;
+    }
+
+    /**
+     * Creates the commands for the files of the dataset and adds the
+     * mappings and file paths to {@link CombineImages}
+     * 
+     * @param files
+     *            The file listing
+     * @return See above
+     */
+    public List<String> apply(List<String> files) {
+        String outDir = CombineImages.outputDir;
+        String prefix = "./" + dir + "/";
+
+        List<String> cmds = new ArrayList<String>();
+        cmds.add("mkdir -p " + outDir + "/" + dir);
+        cmds.add("cd " + outDir + "/" + dir);
+
+        Template series = this.series;
+        if (series == null && pattern != null)
+            series = new Template("{basename}");
+        Run run = new Run();
+        Matcher m = match.matcher("");
+        String[] values = new String[groups.size()];
+        int[] indices = new int[ranges.length];
+        for (String file : files) {
+            if (!file.startsWith(prefix))
+                continue;
+
+            String imgName = file.substring(file.lastIndexOf('/') + 1);
+            if (!m.reset(imgName).matches())
+                continue;
+            for (int g = 0; g < values.length; g++) {
+                values[g] = m.group(groups.get(g));
+                if (values[g] == null)
+                    values[g] = "";
+                Map<String, String> alias = aliases.get(g);
+                if (alias != null && alias.containsKey(values[g]))
+                    values[g] = alias.get(values[g]);
+                else if (defaults[g] != null)
+                    values[g] = defaults[g];
+            }
+
+            String name = rename != null ? rename.format(values) : imgName;
+            cmds.add(CombineImages.cmd + " \"../../" + CombineImages.baseDir
+                    + "/" + dir + "/" + imgName + "\" \"" + name + "\"");
+            if (pattern == null) {
+                CombineImages.addFilePath(dir, name);
+                continue;
+            }
+
+            String seriesName = series.format(values);
+            int s = run.series(seriesName);
+            int c = channel >= 0 ? run.channel(values[channel]) : 0;
+            for (int i = 0; i < ranges.length; i++)
+                indices[i] = Integer.parseInt(values[ranges[i]]);
+            run.indices.add(s, c, indices);
+            for (int g = 0; g < values.length; g++)
+                if (run.values.get(s).get(g) != null)
+                    run.values.get(s).get(g).add(values[g]);
+            if (ranges.length > 0)
+                run.defer(file, s, indices);
+            else
+                CombineImages.addMapping(file, seriesName + ".pattern");
+        }
+
+        run.checkChannels();
+        int[] from = new int[ranges.length];
+        int[] to = new int[ranges.length];
+        nextSeries: for (Map.Entry<String, Integer> e : run.seriesIds.entrySet()) {
+            String name = e.getKey();
+            int s = e.getValue();
+            int[][] chosen = new int[ranges.length][];
+            for (int r = 0; r < ranges.length; r++) {
+                int[] runs = run.runs(name, s, r);
+                if (runs.length == 0)
+                    continue nextSeries;
+                int longest = 0;
+                for (int i = 2; i < runs.length; i += 2)
+                    if (runs[i + 1] - runs[i] > runs[longest + 1] - runs[longest])
+                        longest = i;
+                from[r] = runs[longest];
+                to[r] = runs[longest + 1];
+                chosen[r] = r == 0 && split ? runs : new int[] { from[r], to[r] };
+            }
+            run.chosen.put(s, chosen);
+            int[] parts = ranges.length > 0 ? chosen[0] : null;
+            if (parts == null || parts.length == 2) {
+                cmds.add("echo \"" + pattern.format(name, s, from, to, run)
+                        + "\" > \"" + name + ".pattern\"");
+                CombineImages.addFilePath(dir, name + ".pattern");
+                continue;
+            }
+            for (int i = 0; i < parts.length; i += 2) {
+                from[0] = parts[i];
+                to[0] = parts[i + 1];
+                String part = name + "_" + (i / 2 + 1) + ".pattern";
+                cmds.add("echo \"" + pattern.format(name, s, from, to, run)
+                        + "\" > \"" + part + "\"");
+                CombineImages.addFilePath(dir, part);
+            }
+        }
+        run.mapDeferred();
+
+        cmds.addAll(commands);
+        cmds.add("cd ../..");
+        return cmds;
+    }
+
+    /**
+     * Reads the rules from a config file, e.g.
+     * 
+     * <pre>
+     * # Embryo10.EGFP.Cam_Right_00041.tif
+     * [Figure01A]
+     * match = (?&lt;basename&gt;[^._]+)\.(?&lt;channel&gt;[^._]+)\.Cam_Right_(?&lt;T&gt;\d+)\.tif
+     * alias.channel = EGFP=Cep192, mCherry=EB3
+     * default.channel = ???
+     * rename = {basename}_C{channel}_T{T}.tif
+     * range = T
+     * pattern = {basename}_C&lt;{channel}&gt;_T&lt;{T:5}&gt;.tif
+     * </pre>
+     * 
+     * Empty lines and lines starting with '#' are ignored.
+     * 
+     * @param in
+     *            The config
+     * @return The rules by directory, in the order of the config
+     * @throws IOException
+     */
+    public static Map<String, NamingRule> parse(Reader in) throws IOException {
+        Map<String, NamingRule> rules = new LinkedHashMap<String, NamingRule>();
+        BufferedReader r = new BufferedReader(in);
+        String dir = null;
+        Map<String, String> keys = new LinkedHashMap<String, String>();
+        List<String> commands = new ArrayList<String>();
+        int lineNumber = 0;
+        int start = 0;
+        try {
+            String line = null;
+            while ((line = r.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                if (line.startsWith("[") && line.endsWith("]")) {
+                    if (dir != null)
+                        rules.put(dir, build(dir, keys, commands, start));
+                    dir = line.substring(1, line.length() - 1).trim();
+                    keys.clear();
+                    commands.clear();
+                    start = lineNumber;
+                    continue;
+                }
+                int eq = line.indexOf('=');
+                if (dir == null || eq < 0)
+                    throw new IllegalArgumentException("Invalid line "
+                            + lineNumber + ": " + line);
+                String key = line.substring(0, eq).trim();
+                String value = line.substring(eq + 1).trim();
+                if (key.equals("command"))
+                    commands.add(value);
+                else
+                    keys.put(key, value);
+            }
+            if (dir != null)
+                rules.put(dir, build(dir, keys, commands, start));
+        } finally {
+            r.close();
+        }
+        return rules;
+    }
+
+    private static NamingRule build(String dir, Map<String, String> keys,
+            List<String> commands, int lineNumber) {
+        try {
+            String match = keys.remove("match");
+            if (match == null)
+                throw new IllegalArgumentException("No match expression");
+            NamingRule rule = new NamingRule(dir, match);
+            for (Map.Entry<String, String> e : keys.entrySet()) {
+                String key = e.getKey();
+                String value = e.getValue();
+                if (key.startsWith("alias.")) {
+                    for (String pair : value.split(",")) {
+                        int eq = pair.indexOf('=');
+                        if (eq < 0)
+                            throw new IllegalArgumentException("Invalid alias "
+                                    + pair.trim());
+                        rule.setAlias(key.substring(6), pair.substring(0, eq)
+                                .trim(), pair.substring(eq + 1).trim());
+                    }
+                } else if (key.startsWith("default."))
+                    rule.setDefault(key.substring(8), value);
+                else if (key.equals("rename"))
+                    rule.setRename(value);
+                else if (key.equals("series"))
+                    rule.setSeries(value);
+                else if (key.equals("pattern"))
+                    rule.setPattern(value);
+                else if (key.equals("range"))
+                    rule.setRanges(value.split("\\s*,\\s*"));
+                else if (key.equals("gaps")) {
+                    if (!value.equals("longest") && !value.equals("split"))
+                        throw new IllegalArgumentException("Invalid gaps "
+                                + value + " (longest or split)");
+                    rule.setSplitGaps(value.equals("split"));
+                } else
+                    throw new IllegalArgumentException("Unknown key " + key);
+            }
+            for (String command : commands)
+                rule.addCommand(command);
+            return rule;
+        } catch (IllegalArgumentException e) {
+            String msg = e instanceof PatternSyntaxException ? e.getMessage()
+                    .replace('\n', ' ') : e.getMessage();
+            throw new IllegalArgumentException("Invalid rule [" + dir
+                    + "] (line " + lineNumber + "): " + msg, e);
+        }
+    }
+
+    /**
+     * The series and channels found by one run of {@link #apply(List)}
+     */
+    private class Run {
+
+        /** The series names and their ids */
+        private final Map<String, Integer> seriesIds = new HashMap<String, Integer>();
+
+        private final Map<String, Integer> channelIds = new HashMap<String, Integer>();
+
+        private final List<String> channelNames = new ArrayList<String>();
+
+        private final SeriesAccumulator indices = new SeriesAccumulator(
+                ranges.length);
+
+        /**
+         * The distinct values of the groups listed in the pattern (other
+         * than channel and range groups) of each series, by group index
+         */
+        private final List<List<Set<String>>> values = new ArrayList<List<Set<String>>>();
+
+        /**
+         * The files which are mapped when the ranges of their series are
+         * known, with their series and range indices
+         */
+        private final List<String> deferred = new ArrayList<String>();
+
+        private int[] deferredSeries = new int[16];
+
+        /** The range indices of the deferred files, file * ranges.length + r */
+        private int[] deferredIndex = new int[16 * ranges.length];
+
+        /**
+         * The ranges used for the pattern files of each series, per range
+         * group as from, to pairs (several pairs for the first group if gaps
+         * = split); series without a pattern file are missing
+         */
+        private final Map<Integer, int[][]> chosen = new HashMap<Integer, int[][]>();
+
+        int series(String name) {
+            Integer id = seriesIds.get(name);
+            if (id != null)
+                return id;
+            int s = seriesIds.size();
+            seriesIds.put(name, s);
+            List<Set<String>> lists = new ArrayList<Set<String>>(groups.size());
+            for (int g = 0; g < groups.size(); g++) {
+                boolean listed = g != channel && !isRange(g)
+                        && pattern.refers(g);
+                lists.add(listed ? new LinkedHashSet<String>() : null);
+            }
+            values.add(lists);
+            return s;
+        }
+
+        int channel(String name) {
+            Integer id = channelIds.get(name);
+            if (id != null)
+                return id;
+            int c = channelNames.size();
+            channelIds.put(name, c);
+            channelNames.add(name);
+            return c;
+        }
+
+        /**
+         * Warns about the series which don't have all channels of the
+         * dataset
+         */
+        void checkChannels() {
+            if (channel < 0)
+                return;
+            List<String> incomplete = new ArrayList<String>();
+            for (Map.Entry<String, Integer> e : seriesIds.entrySet())
+                if (indices.getChannels(e.getValue()).length < channelNames.size())
+                    incomplete.add(e.getKey() + " ("
+                            + String.join(",", channelNames(e.getValue())) + ")");
+            if (!incomplete.isEmpty())
+                CombineImages.warn("Warning: " + dir + ": "
+                        + incomplete.size()
+                        + " series don't have all channels: "
+                        + String.join(", ", incomplete));
+        }
+
+        void defer(String file, int series, int[] index) {
+            int n = deferred.size();
+            if (n == deferredSeries.length) {
+                deferredSeries = Arrays.copyOf(deferredSeries, n * 2);
+                deferredIndex = Arrays.copyOf(deferredIndex, n * 2
+                        * ranges.length);
+            }
+            deferred.add(file);
+            deferredSeries[n] = series;
+            System.arraycopy(index, 0, deferredIndex, n * ranges.length,
+                    ranges.length);
+        }
+
+        /**
+         * Get the ranges of a range group which all channels of a series
+         * have in common, see {@link SeriesAccumulator#getRuns(int, int)};
+         * warns about gaps and if there is no common index (empty result)
+         */
+        int[] runs(String name, int series, int r) {
+            String group = groups.get(ranges[r]);
+            int[] runs = indices.getRuns(series, r);
+            if (runs.length == 0) {
+                CombineImages.warn("Warning: " + dir + "/" + name
+                        + ": The channels have no " + group
+                        + " index in common, no pattern file created");
+            } else if (runs.length > 2) {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < runs.length; i += 2)
+                    sb.append(i > 0 ? ", " : "").append(runs[i]).append('-')
+                            .append(runs[i + 1]);
+                CombineImages.warn("Warning: " + dir + "/" + name + ": Missing "
+                        + group + " indices, the complete ranges are " + sb
+                        + (split && r == 0 ? " (split)" : " (using the longest)"));
+            }
+            return runs;
+        }
+
+        /**
+         * Map the deferred files to the pattern file of the ranges they are
+         * in; files which are outside the ranges (or whose series has no
+         * pattern file) are not mapped
+         */
+        void mapDeferred() {
+            String[] names = new String[seriesIds.size()];
+            for (Map.Entry<String, Integer> e : seriesIds.entrySet())
+                names[e.getValue()] = e.getKey();
+            nextFile: for (int i = 0; i < deferred.size(); i++) {
+                int[][] used = chosen.get(deferredSeries[i]);
+                if (used == null)
+                    continue;
+                int base = i * ranges.length;
+                for (int r = 1; r < ranges.length; r++)
+                    if (deferredIndex[base + r] < used[r][0]
+                            || deferredIndex[base + r] > used[r][1])
+                        continue nextFile;
+                int[] runs = used[0];
+                String name = names[deferredSeries[i]];
+                for (int k = 0; k < runs.length; k += 2)
+                    if (deferredIndex[base] >= runs[k]
+                            && deferredIndex[base] <= runs[k + 1])
+                        CombineImages.addMapping(deferred.get(i), name
+                                + (runs.length == 2 ? "" : "_" + (k / 2 + 1))
+                                + ".pattern");
+            }
+        }
+
+        /**
+         * @return The channel names of a series, in the order of the
+         *         channel aliases (channels without alias last, in the order
+         *         they were found)
+         */
+        List<String> channelNames(int series) {
+            final List<String> order = aliases.get(channel) != null ? new ArrayList<String>(
+                    new LinkedHashSet<String>(aliases.get(channel).values()))
+                    : new ArrayList<String>();
+            List<String> names = new ArrayList<String>();
+            for (int c : indices.getChannels(series))
+                names.add(channelNames.get(c));
+            names.sort(Comparator.comparingInt(n -> order.contains(n) ? order
+                    .indexOf(n) : order.size()));
+            return names;
+        }
+    }
+
+    private boolean isRange(int group) {
+        for (int r : ranges)
+            if (r == group)
+                return true;
+        return false;
+    }
+
+    /**
+     * A text with {group} or {group:digits} placeholders, compiled into
+     * literal text and group references
+     */
+    private class Template {
+
+        private final List<String> literals = new ArrayList<String>();
+
+        /** The group index of each placeholder */
+        private final List<Integer> refs = new ArrayList<Integer>();
+
+        /** The number of digits of each placeholder (0: not padded) */
+        private final List<Integer> digits = new ArrayList<Integer>();
+
+        Template(String template) {
+            int pos = 0;
+            int open;
+            while ((open = template.indexOf('{', pos)) >= 0) {
+                int close = template.indexOf('}', open);
+                if (close < 0)
+                    throw new IllegalArgumentException("Missing } in "
+                            + template);
+                literals.add(template.substring(pos, open));
+                String ref = template.substring(open + 1, close);
+                int colon = ref.indexOf(':');
+                digits.add(colon < 0 ? 0 : Integer.parseInt(ref
+                        .substring(colon + 1)));
+                if (colon >= 0)
+                    ref = ref.substring(0, colon);
+                refs.add(ref.equals(SERIES) ? -1 : group(ref));
+                pos = close + 1;
+            }
+            literals.add(template.substring(pos));
+        }
+
+        /**
+         * @return <code>true</code> if the template contains the group
+         */
+        boolean refers(int group) {
+            return refs.contains(group);
+        }
+
+        /**
+         * Fill in the values of a file
+         */
+        String format(String[] values) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < refs.size(); i++)
+                sb.append(literals.get(i)).append(values[refs.get(i)]);
+            sb.append(literals.get(refs.size()));
+            return sb.toString();
+        }
+
+        /**
+         * Fill in the values of a series, with the given ranges of the range
+         * groups
+         */
+        String format(String name, int series, int[] from, int[] to, Run run) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < refs.size(); i++) {
+                sb.append(literals.get(i));
+                int g = refs.get(i);
+                if (g < 0) {
+                    sb.append(name);
+                } else if (isRange(g)) {
+                    int r = 0;
+                    while (ranges[r] != g)
+                        r++;
+                    sb.append(pad(from[r], digits.get(i))).append('-')
+                            .append(pad(to[r], digits.get(i)));
+                } else if (g == channel) {
+                    sb.append(String.join(",", run.channelNames(series)));
+                } else {
+                    String sep = "";
+                    for (String v : run.values.get(series).get(g)) {
+                        sb.append(sep).append(v);
+                        sep = ",";
+                    }
+                }
+            }
+            sb.append(literals.get(refs.size()));
+            return sb.toString();
+        }
+
+        private String pad(int x, int digits) {
+            if (digits == 0)
+                return String.valueOf(x);
+            char[] zeros = new char[digits];
+            Arrays.fill(zeros, '0');
+            return new DecimalFormat(new String(zeros)).format(x);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+package prepimport;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Tracks the range (min, max) and the number of the indices (e.g. T and Z)
+ * of the files of image series, per channel. Series and channels are
+ * identified by ids (0, 1, 2, ...) which the caller assigns, e.g. by
+ * interning the series and channel names. All values are kept in primitive
+ * arrays, so adding a file does not allocate anything (except when the
+ * arrays have to grow).
+ * 
+ * The range of a series is the range which all of its channels have in
+ * common (the intersection of the ranges of the channels), i.e. the range
+ * which can be used in a pattern file.
+ * 
+ * Additionally the indices which are actually present are kept in a bitset
+ * per channel (the indices are small, dense numbers, so a plain BitSet is
+ * compact), so that gaps within the range (missing files) can be
+ * detected, see {@link #getRuns(int, int)}. The dimensions are tracked
+ * independently, so a missing combination (e.g. T 5 with Z 3, while both
+ * occur with other indices) is not detected.
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class SeriesAccumulator {
+
+    /** The number of indices per file */
+    private final int dims;
+
+    /** The first slot of each series, -1 if there is none */
+    private int[] first = new int[16];
+
+    /** The last slot of each series (new channels are appended) */
+    private int[] last = new int[16];
+
+    /** The number of series */
+    private int series = 0;
+
+    // per slot, i.e. per series and channel:
+
+    private int[] channel = new int[16];
+
+    /** The next slot of the same series, -1 if there is none */
+    private int[] next = new int[16];
+
+    private int[] count = new int[16];
+
+    /** min and max of each index, slot * dims * 2 + dim * 2 (+1) */
+    private int[] minMax;
+
+    /** The indices present, slot * dims + dim */
+    private BitSet[] present;
+
+    private int slots = 0;
+
+    /**
+     * Creates a new accumulator
+     * 
+     * @param dims
+     *            The number of indices per file (e.g. 2 for T and Z)
+     */
+    public SeriesAccumulator(int dims) {
+        this.dims = dims;
+        this.minMax = new int[first.length * dims * 2];
+        this.present = new BitSet[first.length * dims];
+    }
+
+    /**
+     * Add the indices of a file
+     * 
+     * @param series
+     *            The series id
+     * @param channel
+     *            The channel id
+     * @param values
+     *            The indices (one per dimension, not negative)
+     */
+    public void add(int series, int channel, int[] values) {
+        for (int d = 0; d < dims; d++)
+            if (values[d] < 0)
+                throw new IllegalArgumentException("Negative index "
+                        + values[d]);
+        int slot = slot(series, channel);
+        int offset = slot * dims * 2;
+        if (count[slot] == 0) {
+            for (int d = 0; d < dims; d++) {
+                minMax[offset + 2 * d] = values[d];
+                minMax[offset + 2 * d + 1] = values[d];
+            }
+        } else {
+            for (int d = 0; d < dims; d++) {
+                if (values[d] < minMax[offset + 2 * d])
+                    minMax[offset + 2 * d] = values[d];
+                if (values[d] > minMax[offset + 2 * d + 1])
+                    minMax[offset + 2 * d + 1] = values[d];
+            }
+        }
+        for (int d = 0; d < dims; d++)
+            present[slot * dims + d].set(values[d]);
+        count[slot]++;
+    }
+
+    /**
+     * Get the slot of a series and channel, creates a new one if necessary
+     */
+    private int slot(int s, int c) {
+        if (s >= series)
+            addSeries(s);
+        int slot = first[s];
+        while (slot >= 0) {
+            if (channel[slot] == c)
+                return slot;
+            slot = next[slot];
+        }
+
+        if (slots == channel.length) {
+            int n = slots * 2;
+            channel = Arrays.copyOf(channel, n);
+            next = Arrays.copyOf(next, n);
+            count = Arrays.copyOf(count, n);
+            minMax = Arrays.copyOf(minMax, n * dims * 2);
+            present = Arrays.copyOf(present, n * dims);
+        }
+        slot = slots++;
+        channel[slot] = c;
+        next[slot] = -1;
+        count[slot] = 0;
+        for (int d = 0; d < dims; d++)
+            present[slot * dims + d] = new BitSet();
+        if (first[s] < 0)
+            first[s] = slot;
+        else
+            next[last[s]] = slot;
+        last[s] = slot;
+        return slot;
+    }
+
+    private void addSeries(int s) {
+        if (s >= first.length) {
+            int n = Math.max(first.length * 2, s + 1);
+            first = Arrays.copyOf(first, n);
+            last = Arrays.copyOf(last, n);
+        }
+        Arrays.fill(first, series, s + 1, -1);
+        series = s + 1;
+    }
+
+    /**
+     * @return The number of series (the highest series id + 1)
+     */
+    public int getSeriesCount() {
+        return series;
+    }
+
+    /**
+     * @param series
+     *            The series id
+     * @return The ids of the channels of the series, in the order they were
+     *         added
+     */
+    public int[] getChannels(int series) {
+        int n = 0;
+        for (int slot = firstSlot(series); slot >= 0; slot = next[slot])
+            n++;
+        int[] result = new int[n];
+        n = 0;
+        for (int slot = firstSlot(series); slot >= 0; slot = next[slot])
+            result[n++] = channel[slot];
+        return result;
+    }
+
+    /**
+     * @param series
+     *            The series id
+     * @return The number of files of the series (all channels)
+     */
+    public int getCount(int series) {
+        int n = 0;
+        for (int slot = firstSlot(series); slot >= 0; slot = next[slot])
+            n += count[slot];
+        return n;
+    }
+
+    /**
+     * @param series
+     *            The series id
+     * @param dim
+     *            The dimension
+     * @return The lowest index which all channels of the series have in
+     *         common
+     */
+    public int getMin(int series, int dim) {
+        int result = Integer.MIN_VALUE;
+        for (int slot = firstSlot(series); slot >= 0; slot = next[slot])
+            result = Math.max(result, minMax[slot * dims * 2 + 2 * dim]);
+        return result;
+    }
+
+    /**
+     * @param series
+     *            The series id
+     * @param dim
+     *            The dimension
+     * @return The highest index which all channels of the series have in
+     *         common
+     */
+    public int getMax(int series, int dim) {
+        int result = Integer.MAX_VALUE;
+        for (int slot = firstSlot(series); slot >= 0; slot = next[slot])
+            result = Math.min(result, minMax[slot * dims * 2 + 2 * dim + 1]);
+        return result;
+    }
+
+    /**
+     * @param series
+     *            The series id
+     * @param dim
+     *            The dimension
+     * @param common
+     *            Pass <code>true</code> to get the indices which all
+     *            channels have, <code>false</code> to get the indices which
+     *            any channel has
+     * @return See above
+     */
+    public BitSet getIndices(int series, int dim, boolean common) {
+        BitSet result = null;
+        for (int slot = firstSlot(series); slot >= 0; slot = next[slot]) {
+            if (result == null)
+                result = (BitSet) present[slot * dims + dim].clone();
+            else if (common)
+                result.and(present[slot * dims + dim]);
+            else
+                result.or(present[slot * dims + dim]);
+        }
+        return result != null ? result : new BitSet();
+    }
+
+    /**
+     * Get the contiguous ranges of indices which all channels of a series
+     * have. If there are no missing files there is a single range, from
+     * {@link #getMin(int, int)} to {@link #getMax(int, int)}.
+     * 
+     * @param series
+     *            The series id
+     * @param dim
+     *            The dimension
+     * @return The ranges (first and last index of each range)
+     */
+    public int[] getRuns(int series, int dim) {
+        BitSet common = getIndices(series, dim, true);
+        int[] runs = new int[0];
+        int n = 0;
+        for (int from = common.nextSetBit(0); from >= 0; from = common
+                .nextSetBit(from)) {
+            int to = common.nextClearBit(from);
+            runs = Arrays.copyOf(runs, n + 2);
+            runs[n++] = from;
+            runs[n++] = to - 1;
+            from = to;
+        }
+        return runs;
+    }
+
+    private int firstSlot(int s) {
+        return s < series ? first[s] : -1;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the splitting of lines by {@link CSVParser}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class CSVParserTest {
+
+    private static void assertSplit(CSVFormat format, String line,
+            String... expected) {
+        assertArrayEquals(expected, format.newParser().split(line));
+        FieldBuffer fields = new FieldBuffer();
+        format.newParser().split(line, fields);
+        assertArrayEquals(expected, fields.toArray());
+    }
+
+    @Test
+    public void testTrailingSeparator() {
+        assertSplit(CSVFormat.CSV, "a,b,", "a", "b", "");
+        assertSplit(CSVFormat.TSV, "a\t\t", "a", "", "");
+        assertSplit(CSVFormat.CSV.withTrim(false), "a, b ,", "a", " b ", "");
+    }
+
+    /**
+     * The last cell has an unterminated quote and the line ends with the
+     * separator, so the separator is part of the cell
+     */
+    @Test
+    public void testTrailingSeparatorInUnterminatedQuote() {
+        assertSplit(CSVFormat.CSV, "\"\t, b\"a\"\t,", ", ba\t,");
+        assertSplit(CSVFormat.CSV, "x,\"a,", "x", "a,");
+        assertSplit(CSVFormat.CSV.withTrim(false), "x,\"a ,", "x", "a ,");
+    }
+}
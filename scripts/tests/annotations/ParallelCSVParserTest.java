@@ -0,0 +1,89 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that {@link ParallelCSVParser} reads the same records as the line
+ * based {@link CSVRowReader}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class ParallelCSVParserTest {
+
+    private static final String INPUT = "a,b\n1,2\r\n\n\"x, 3\n4,\"5\"\r6,7\n";
+
+    private static List<String[]> readLines(String input) throws IOException {
+        List<String[]> rows = new ArrayList<String[]>();
+        CSVRowReader r = new CSVRowReader(new StringReader(input), ',');
+        rows.add(r.getHeaders());
+        String[] row = null;
+        while ((row = r.next()) != null)
+            rows.add(row);
+        r.close();
+        return rows;
+    }
+
+    /**
+     * An unbalanced quote only affects its own line
+     */
+    @Test
+    public void testUnbalancedQuote() throws IOException {
+        Table t = Table.parse(INPUT, ',');
+        assertEquals(4, t.getRowCount());
+        assertEquals("x, 3", t.get(1, 0));
+        assertEquals("4", t.get(2, 0));
+        assertEquals(t.toString(','),
+                Table.read(new CSVRowReader(new StringReader(INPUT), ','))
+                        .toString(','));
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        List<String[]> expected = readLines(INPUT);
+        for (int chunkSize = 1; chunkSize < INPUT.length() + 2; chunkSize++) {
+            ParallelCSVParser p = new ParallelCSVParser(CSVFormat.CSV)
+                    .setChunkSize(chunkSize);
+            assertArrayEquals(expected.toArray(), p.parse(INPUT).toArray());
+
+            BufferedReader r = new BufferedReader(new StringReader(INPUT));
+            List<String[]> rows = new ArrayList<String[]>();
+            rows.add(CSVFormat.CSV.parser().split(r.readLine()));
+            for (List<String[]> chunk : p.parseBody(r,
+                    ArrayList<String[]>::new, List::add))
+                rows.addAll(chunk);
+            assertArrayEquals(expected.toArray(), rows.toArray());
+        }
+    }
+}
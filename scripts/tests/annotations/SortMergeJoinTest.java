@@ -0,0 +1,72 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import annotations.HashJoin.Match;
+
+/**
+ * Tests the joining of sorted sources by {@link SortMergeJoin}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class SortMergeJoinTest {
+
+    private static RowSource source(String csv) throws IOException {
+        return new CSVRowReader(new StringReader(csv), ',');
+    }
+
+    @Test
+    public void testLeftJoin() throws IOException {
+        try (RowSource joined = new SortMergeJoin("key").setMatch(Match.ALL)
+                .join(source("key,a\n1,x\n2,y\n3,z\n"),
+                        source("key,b\n1,p\n3,q\n3,r\n"))) {
+            assertArrayEquals(new String[] { "key", "a", "b" },
+                    joined.getHeaders());
+            assertArrayEquals(new String[] { "1", "x", "p" }, joined.next());
+            assertArrayEquals(new String[] { "2", "y", "" }, joined.next());
+            assertArrayEquals(new String[] { "3", "z", "q" }, joined.next());
+            assertArrayEquals(new String[] { "3", "z", "r" }, joined.next());
+            assertNull(joined.next());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnsortedInputAfterUnmatchedRow() throws IOException {
+        try (RowSource joined = new SortMergeJoin("key").join(
+                source("key,a\n5,x\n3,y\n"), source("key,b\n3,p\n"))) {
+            // 5 has no match and is output without content
+            assertArrayEquals(new String[] { "5", "x", "" }, joined.next());
+            joined.next();
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package annotations;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests the processing of columns of a {@link Table}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class TableTest {
+
+    /**
+     * @return A table with a plain (id) and a dictionary encoded (kind)
+     *         column
+     */
+    private static Table table() {
+        StringBuilder sb = new StringBuilder("id,kind\n");
+        for (int i = 0; i < 2 * Column.MIN_ROWS_TO_ENCODE; i++)
+            sb.append(i).append(',').append(i % 2 == 0 ? "x" : "y")
+                    .append('\n');
+        return Table.parse(sb.toString(), ',');
+    }
+
+    /**
+     * A processor returning <code>null</code> leaves empty cells
+     */
+    @Test
+    public void testProcessNull() {
+        Table t = table();
+        t.process(0, input -> null);
+        t.process(1, input -> input.equals("x") ? null : input);
+        assertEquals(2, t.getRowCount());
+        assertEquals("", t.get(0, 0));
+        assertEquals("", t.get(0, 1));
+
+        t.removeEmptyColumns();
+        assertEquals(1, t.getColumnCount());
+        t.filter(0, input -> input.isEmpty());
+        assertEquals(1, t.getRowCount());
+        assertEquals("y", t.get(0, 0));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ *------------------------------------------------------------------------------
+ *  Copyright (C) 2018 University of Dundee. All rights reserved.
+ *
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License along
+ *  with this program; if not, write to the Free Software Foundation, Inc.,
+ *  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ *------------------------------------------------------------------------------
+ */
+
+
+package prepimport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the handling of gaps by {@link NamingRule}
+ * 
+ * @author Dominik Lindner &nbsp;&nbsp;&nbsp;&nbsp; <a
+ *         href="mailto:d.lindner@dundee.ac.uk">d.lindner@dundee.ac.uk</a>
+ */
+public class NamingRuleTest {
+
+    private static NamingRule rule(String dir, boolean split) {
+        return new NamingRule(dir,
+                "(?<basename>[^.]+)\\.(?<channel>[ab])\\.T(?<T>\\d+)\\.tif")
+                .setRename("{basename}_C{channel}_T{T}.tif").setRanges("T")
+                .setPattern("{basename}_C<{channel}>_T<{T:2}>.tif")
+                .setSplitGaps(split);
+    }
+
+
+    @Test
+    public void testSplit() {
+        List<String> cmds = rule("Split", true).apply(
+                Arrays.asList("./Split/x.a.T01.tif", "./Split/x.a.T02.tif",
+                        "./Split/x.a.T04.tif", "./Split/x.b.T01.tif",
+                        "./Split/x.b.T02.tif", "./Split/x.b.T04.tif"));
+        assertTrue(cmds.contains(
+                "echo \"x_C<a,b>_T<01-02>.tif\" > \"x_1.pattern\""));
+        assertTrue(cmds.contains(
+                "echo \"x_C<a,b>_T<04-04>.tif\" > \"x_2.pattern\""));
+        assertEquals("x_1.pattern", CombineImages.mapping.get("Split/x.a.T02.tif"));
+        assertEquals("x_2.pattern", CombineImages.mapping.get("Split/x.b.T04.tif"));
+    }
+
+    @Test
+    public void testLongest() {
+        List<String> cmds = rule("Longest", false).apply(
+                Arrays.asList("./Longest/x.a.T01.tif", "./Longest/x.a.T03.tif",
+                        "./Longest/x.a.T04.tif", "./Longest/x.b.T01.tif",
+                        "./Longest/x.b.T03.tif", "./Longest/x.b.T04.tif"));
+        assertTrue(cmds.contains(
+                "echo \"x_C<a,b>_T<03-04>.tif\" > \"x.pattern\""));
+        assertEquals("x.pattern", CombineImages.mapping.get("Longest/x.a.T03.tif"));
+        assertEquals("x.pattern", CombineImages.mapping.get("Longest/x.b.T04.tif"));
+        // outside of the longest range
+        assertNull(CombineImages.mapping.get("Longest/x.a.T01.tif"));
+        assertNull(CombineImages.mapping.get("Longest/x.b.T01.tif"));
+    }
+
+    /**
+     * Checks that no pattern file is created for a series whose channels
+     * have no T index in common, and that its files are not mapped
+     */
+    private static void assertNoPattern(String dir, boolean split) {
+        List<String> cmds = rule(dir, split).apply(
+                Arrays.asList("./" + dir + "/x.a.T01.tif", "./" + dir
+                        + "/x.a.T02.tif", "./" + dir + "/x.b.T05.tif", "./"
+                        + dir + "/x.b.T06.tif"));
+        for (String cmd : cmds)
+            assertFalse(cmd, cmd.contains(".pattern"));
+        // the files are still linked
+        assertTrue(cmds.contains(CombineImages.cmd + " \"../../"
+                + CombineImages.baseDir + "/" + dir
+                + "/x.a.T01.tif\" \"x_Ca_T01.tif\""));
+        assertNull(CombineImages.mapping.get(dir + "/x.a.T01.tif"));
+        assertNull(CombineImages.mapping.get(dir + "/x.b.T06.tif"));
+    }
+
+    /**
+     * The channels have no T index in common, so there is nothing to split
+     */
+    @Test
+    public void testSplitNoCommonIndex() {
+        assertNoPattern("Disjoint", true);
+    }
+
+    @Test
+    public void testLongestNoCommonIndex() {
+        assertNoPattern("DisjointLongest", false);
+    }
+}